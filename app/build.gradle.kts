@@ -43,6 +43,8 @@ dependencies {
     implementation(libs.constraintlayout)
     implementation(libs.constraintlayout.core)
     testImplementation(libs.junit)
+    // android.jar only has stubs of org.json; local tests of JSON parsing need the real one
+    testImplementation(libs.json)
     androidTestImplementation(libs.ext.junit)
     androidTestImplementation(libs.espresso.core)
     // Room components
@@ -79,4 +81,5 @@ dependencies {
 
     //Stylus support
     implementation(libs.ink.authoring)
+    implementation(libs.input.motionprediction)
 }
\ No newline at end of file
@@ -20,16 +20,20 @@ import com.example.staffpad.database.PageLayerDao;
 import com.example.staffpad.database.PageLayerEntity;
 import com.example.staffpad.database.PageSettingsDao;
 import com.example.staffpad.database.PageSettingsEntity;
-import com.tom_roush.pdfbox.pdmodel.PDDocument;
-import com.tom_roush.pdfbox.rendering.PDFRenderer;
-import android.os.ParcelFileDescriptor;
-import android.graphics.pdf.PdfRenderer;
+import com.example.staffpad.database.SheetEntity;
+import com.example.staffpad.rendering.BitmapPool;
+import com.example.staffpad.rendering.DiskPageCache;
+import com.example.staffpad.rendering.PageColorDepth;
+import com.example.staffpad.rendering.PdfDocumentHandle;
+import com.example.staffpad.rendering.RendererSelector;
 
 import java.io.File;
 import java.io.IOException;
 
 public class CropActivity extends AppCompatActivity {
     private static final String TAG = "CropActivity";
+    // Raster scale for the crop preview; also part of the disk cache key
+    private static final float RENDER_SCALE = 2.0f;
 
     public static final String EXTRA_SHEET_ID = "sheet_id";
     public static final String EXTRA_PAGE_NUMBER = "page_number";
@@ -56,7 +60,7 @@ public class CropActivity extends AppCompatActivity {
     private int pageNumber;
     private String filePath;
     private Bitmap originalBitmap;
-    private PDDocument document;
+    private PdfDocumentHandle document;
     private float currentRotation = 0f;
     private float brightness = 0f; // -100 to 100
     private float contrast = 1f; // 0.5 to 2.0
@@ -184,19 +188,29 @@ public class CropActivity extends AppCompatActivity {
                     return;
                 }
 
-                document = PDDocument.load(pdfFile);
-                PDFRenderer renderer = new PDFRenderer(document);
+                // The unmodified page raster is cached on disk across sessions
+                DiskPageCache diskCache = DiskPageCache.getInstance(this);
+                String cacheKey = DiskPageCache.key(pdfFile, pageNumber, RENDER_SCALE, 0);
+                originalBitmap = diskCache.get(cacheKey);
+                if (originalBitmap == null) {
+                    // Same backend as the viewer; falls back to Android PdfRenderer if PDFBox fails
+                    SheetEntity sheet = AppDatabase.getDatabase(getApplicationContext()).sheetDao().getSheetByIdSync(sheetId);
+                    RendererSelector.Backend preferred = sheet != null
+                            ? RendererSelector.fromName(sheet.getPreferredRenderer()) : null;
+                    document = PdfDocumentHandle.open(pdfFile, preferred != RendererSelector.Backend.ANDROID);
+
+                    if (pageNumber >= document.getPageCount()) {
+                        pageNumber = 0;
+                        cacheKey = DiskPageCache.key(pdfFile, pageNumber, RENDER_SCALE, 0);
+                    }
 
-                if (pageNumber >= document.getNumberOfPages()) {
-                    pageNumber = 0;
+                    // Render at high resolution for better quality
+                    originalBitmap = document.render(pageNumber, RENDER_SCALE);
+                    diskCache.put(cacheKey, originalBitmap);
                 }
-
-                // Render at high resolution for better quality with fallback
-                try {
-                    originalBitmap = renderer.renderImage(pageNumber, 2.0f);
-                } catch (Throwable t) {
-                    Log.e(TAG, "PdfBox render failed in CropActivity, using Android PdfRenderer", t);
-                    originalBitmap = renderWithAndroidPdfRenderer(new File(filePath), pageNumber, 2.0f);
+                // Black-and-white pages are held at half the memory; adjustments and crop work on any config
+                if (new com.example.staffpad.utils.SharedPreferencesHelper(this).isReducedDepthPages()) {
+                    originalBitmap = PageColorDepth.reduceIfMonochrome(originalBitmap);
                 }
 
                 runOnUiThreadSafe(() -> {
@@ -462,15 +476,12 @@ public class CropActivity extends AppCompatActivity {
     protected void onDestroy() {
         super.onDestroy();
         if (document != null) {
-            try {
-                document.close();
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing document", e);
-            }
-        }
-        if (originalBitmap != null && !originalBitmap.isRecycled()) {
-            originalBitmap.recycle();
+            document.close();
+            document = null;
         }
+        // Pooled, and possibly still pinned by the disk cache writer; the pool defers reuse until unpinned
+        BitmapPool.getInstance().release(originalBitmap);
+        originalBitmap = null;
     }
     private void runOnUiThreadSafe(Runnable action) {
         if (!isFinishing() && !(android.os.Build.VERSION.SDK_INT >= 17 && isDestroyed())) {
@@ -478,30 +489,4 @@ public class CropActivity extends AppCompatActivity {
         }
     }
 
-    private Bitmap renderWithAndroidPdfRenderer(File file, int pageIndex, float scale) {
-        ParcelFileDescriptor fd = null;
-        PdfRenderer pdfRenderer = null;
-        PdfRenderer.Page page = null;
-        try {
-            fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
-            pdfRenderer = new PdfRenderer(fd);
-            if (pageIndex < 0 || pageIndex >= pdfRenderer.getPageCount()) {
-                pageIndex = 0;
-            }
-            page = pdfRenderer.openPage(pageIndex);
-            int width = Math.max(1, (int) (page.getWidth() * scale));
-            int height = Math.max(1, (int) (page.getHeight() * scale));
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
-            return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Android PdfRenderer failed in CropActivity", e);
-            return null;
-        } finally {
-            try { if (page != null) page.close(); } catch (Throwable ignored) {}
-            try { if (pdfRenderer != null) pdfRenderer.close(); } catch (Throwable ignored) {}
-            try { if (fd != null) fd.close(); } catch (Throwable ignored) {}
-        }
-    }
-
 }
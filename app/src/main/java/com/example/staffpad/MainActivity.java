@@ -1257,10 +1257,7 @@ public class MainActivity extends AppCompatActivity {
 
         // Show layer manager dialog
         LayerManagerDialog dialog = LayerManagerDialog.newInstance(sheetId, pageNumber);
-        dialog.setOnLayersChangedListener(() -> {
-            // Refresh the page when layers change
-            fragment.refreshPage();
-        });
+        // No refresh needed: the page observes its layers, and annotation layers are only shown or hidden
         dialog.show(getSupportFragmentManager(), "layer_manager");
     }
 
@@ -1874,8 +1871,13 @@ public class MainActivity extends AppCompatActivity {
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 if (result.getResultCode() == Activity.RESULT_OK) {
-                    // Refresh the current page display after cropping
-                    refreshCurrentPage();
+                    // Only the page settings changed: compose the current page again, keeping the open document
+                    SheetDetailFragment fragment = (SheetDetailFragment) getSupportFragmentManager()
+                            .findFragmentById(R.id.content_container);
+                    if (fragment != null) {
+                        fragment.invalidatePage(fragment.getSheetId(), fragment.getCurrentPage(),
+                                SheetDetailFragment.PageAspect.SETTINGS);
+                    }
                     Toast.makeText(this, "Page updated successfully", Toast.LENGTH_SHORT).show();
                 }
             }
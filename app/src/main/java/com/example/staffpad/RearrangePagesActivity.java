@@ -2,9 +2,7 @@ package com.example.staffpad;
 
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.pdf.PdfRenderer;
 import android.os.Bundle;
-import android.os.ParcelFileDescriptor;
 import android.util.Log;
 import android.view.MenuItem;
 import android.view.View;
@@ -19,6 +17,9 @@ import com.example.staffpad.adapters.RearrangePagesAdapter;
 import com.example.staffpad.database.AppDatabase;
 import com.example.staffpad.database.SheetDao;
 import com.example.staffpad.database.SheetEntity;
+import com.example.staffpad.rendering.DiskPageCache;
+import com.example.staffpad.rendering.PageMapping;
+import com.example.staffpad.rendering.PdfDocumentHandle;
 import com.google.android.material.appbar.MaterialToolbar;
 
 import org.json.JSONArray;
@@ -31,6 +32,7 @@ public class RearrangePagesActivity extends AppCompatActivity implements Rearran
 
     public static final String EXTRA_SHEET_ID = "extra_sheet_id";
     public static final String RESULT_CHANGED = "result_changed";
+    private static final float THUMBNAIL_SCALE = 0.2f;
     private long sheetId;
     private SheetEntity sheet;
     private RecyclerView recyclerView;
@@ -105,43 +107,31 @@ public class RearrangePagesActivity extends AppCompatActivity implements Rearran
 
     private void loadData() {
         AppDatabase.databaseWriteExecutor.execute(() -> {
+            PdfDocumentHandle document = null;
             try {
                 SheetDao dao = AppDatabase.getDatabase(getApplicationContext()).sheetDao();
                 sheet = dao.getSheetByIdSync(sheetId);
                 if (sheet == null) { finish(); return; }
                 File file = new File(sheet.getFilePath());
                 List<RearrangePagesAdapter.PageItem> list = new ArrayList<>();
-                originalTotalCount = getOriginalPageCount(file);
+                // One document (PdfRenderer only; thumbnails are small) for the page count and every thumbnail
+                try { document = PdfDocumentHandle.open(file, false); } catch (Exception e) { Log.e("Rearrange", "Cannot open PDF", e); }
+                originalTotalCount = document != null ? document.getPageCount() : 0;
 
-                // Build current mapping from JSON if exists, else identity
+                // Current order without deleted pages, the same mapping the viewer uses
+                PageMapping mapping = PageMapping.forSheet(sheet, originalTotalCount);
                 List<Integer> logicalToOriginal = new ArrayList<>();
-                try {
-                    if (sheet.getPageOrderJson() != null && !sheet.getPageOrderJson().isEmpty()) {
-                        JSONArray arr = new JSONArray(sheet.getPageOrderJson());
-                        for (int i = 0; i < arr.length(); i++) logicalToOriginal.add(arr.getInt(i));
-                    }
-                } catch (Throwable ignored) {}
-                // apply deletions filtering
-                java.util.HashSet<Integer> deleted = new java.util.HashSet<>();
-                try {
-                    if (sheet.getDeletedPagesJson() != null && !sheet.getDeletedPagesJson().isEmpty()) {
-                        JSONArray del = new JSONArray(sheet.getDeletedPagesJson());
-                        for (int i = 0; i < del.length(); i++) deleted.add(del.getInt(i));
-                    }
-                } catch (Throwable ignored) {}
-
-                if (logicalToOriginal.isEmpty()) {
-                    for (int i = 0; i < originalTotalCount; i++) if (!deleted.contains(i)) logicalToOriginal.add(i);
-                } else {
-                    // filter by deleted
-                    List<Integer> filtered = new ArrayList<>();
-                    for (int v : logicalToOriginal) if (!deleted.contains(v)) filtered.add(v);
-                    logicalToOriginal = filtered;
-                }
+                for (int i = 0; i < mapping.size(); i++) logicalToOriginal.add(mapping.toOriginal(i));
 
-                // Render thumbnails small
+                // Render thumbnails small, reusing thumbnails cached on disk in earlier sessions
+                DiskPageCache diskCache = DiskPageCache.getInstance(getApplicationContext());
                 for (int origIndex : logicalToOriginal) {
-                    Bitmap thumb = renderThumbnail(file, origIndex, 0.2f);
+                    String cacheKey = DiskPageCache.key(file, origIndex, THUMBNAIL_SCALE, 0);
+                    Bitmap thumb = diskCache.get(cacheKey);
+                    if (thumb == null) {
+                        thumb = document != null ? document.render(origIndex, THUMBNAIL_SCALE) : null;
+                        diskCache.put(cacheKey, thumb);
+                    }
                     list.add(new RearrangePagesAdapter.PageItem(origIndex, thumb));
                 }
 
@@ -151,45 +141,12 @@ public class RearrangePagesActivity extends AppCompatActivity implements Rearran
             } catch (Exception e) {
                 Log.e("Rearrange", "loadData failed", e);
                 runOnUiThread(this::finish);
+            } finally {
+                if (document != null) document.close();
             }
         });
     }
 
-    private int getOriginalPageCount(File file) {
-        ParcelFileDescriptor fd = null; PdfRenderer pr = null;
-        try {
-            fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
-            pr = new PdfRenderer(fd);
-            return pr.getPageCount();
-        } catch (Exception e) {
-            return 0;
-        } finally {
-            try { if (pr != null) pr.close(); } catch (Throwable ignore) {}
-            try { if (fd != null) fd.close(); } catch (Throwable ignore) {}
-        }
-    }
-
-    private Bitmap renderThumbnail(File file, int pageIndex, float scale) {
-        ParcelFileDescriptor fd = null; PdfRenderer pr = null; PdfRenderer.Page page = null;
-        try {
-            fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
-            pr = new PdfRenderer(fd);
-            if (pageIndex < 0 || pageIndex >= pr.getPageCount()) return null;
-            page = pr.openPage(pageIndex);
-            int w = Math.max(1, (int)(page.getWidth() * scale));
-            int h = Math.max(1, (int)(page.getHeight() * scale));
-            Bitmap bmp = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-            page.render(bmp, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
-            return bmp;
-        } catch (Exception e) {
-            return null;
-        } finally {
-            try { if (page != null) page.close(); } catch (Throwable ignore) {}
-            try { if (pr != null) pr.close(); } catch (Throwable ignore) {}
-            try { if (fd != null) fd.close(); } catch (Throwable ignore) {}
-        }
-    }
-
     private void onSave() {
         List<Integer> order = adapter.computeOrderMapping();
         List<Integer> deleted = adapter.computeDeletedOriginals(originalTotalCount);
@@ -6,14 +6,18 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.RadioButton;
 import android.widget.RadioGroup;
+import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatDelegate;
 import androidx.fragment.app.DialogFragment;
 
+import com.example.staffpad.rendering.DiskPageCache;
 import com.example.staffpad.utils.SharedPreferencesHelper;
 import com.google.android.material.dialog.MaterialAlertDialogBuilder;
+import com.google.android.material.materialswitch.MaterialSwitch;
+import com.google.android.material.slider.Slider;
 
 public class SettingsDialogFragment extends DialogFragment {
 
@@ -54,6 +58,25 @@ public class SettingsDialogFragment extends DialogFragment {
             AppCompatDelegate.setDefaultNightMode(mode);
         });
 
+        TextView cacheLabel = view.findViewById(R.id.textPageCacheBudget);
+        Slider cacheSlider = view.findViewById(R.id.sliderPageCacheBudget);
+        int cacheMb = Math.min(1024, Math.round(preferencesHelper.getPageCacheBudgetMb() / 64f) * 64);
+        cacheSlider.setValue(cacheMb);
+        cacheLabel.setText(getString(R.string.page_cache_budget, cacheMb));
+        cacheSlider.addOnChangeListener((slider, value, fromUser) -> {
+            cacheLabel.setText(getString(R.string.page_cache_budget, (int) value));
+            if (!fromUser) return;
+            preferencesHelper.setPageCacheBudgetMb((int) value);
+            DiskPageCache.getInstance(requireContext()).setMaxBytes((long) value * 1024L * 1024L);
+        });
+
+        MaterialSwitch reducedDepthSwitch = view.findViewById(R.id.switchReducedDepth);
+        reducedDepthSwitch.setChecked(preferencesHelper.isReducedDepthPages());
+        reducedDepthSwitch.setOnCheckedChangeListener((button, checked) -> {
+            preferencesHelper.setReducedDepthPages(checked);
+            DiskPageCache.getInstance(requireContext()).setReducedDepth(checked);
+        });
+
         return new MaterialAlertDialogBuilder(requireContext())
                 .setTitle(R.string.settings_title)
                 .setView(view)
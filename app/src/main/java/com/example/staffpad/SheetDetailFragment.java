@@ -3,6 +3,7 @@ package com.example.staffpad;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.ColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.RectF;
@@ -19,17 +20,29 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
-import androidx.lifecycle.LiveData;
 
 import com.example.staffpad.database.SheetEntity;
+import com.example.staffpad.rendering.AnnotationRenderer;
+import com.example.staffpad.rendering.BitmapPool;
+import com.example.staffpad.rendering.DiskPageCache;
+import com.example.staffpad.rendering.OverlayBitmapCache;
+import com.example.staffpad.rendering.PageBitmapCache;
+import com.example.staffpad.rendering.PageColorDepth;
+import com.example.staffpad.rendering.PageCompositor;
+import com.example.staffpad.rendering.PageMapping;
+import com.example.staffpad.rendering.PageStateLiveData;
+import com.example.staffpad.rendering.PdfDocumentHandle;
+import com.example.staffpad.rendering.RenderScheduler;
+import com.example.staffpad.rendering.RendererSelector;
 import com.example.staffpad.viewmodel.SheetViewModel;
+import com.example.staffpad.views.AnnotationLayerView;
 import com.example.staffpad.views.AnnotationOverlayView;
+import com.example.staffpad.views.PageTileView;
 import com.github.chrisbanes.photoview.PhotoView;
-import com.tom_roush.pdfbox.pdmodel.PDDocument;
-import com.tom_roush.pdfbox.rendering.PDFRenderer;
-import com.tom_roush.pdfbox.io.MemoryUsageSetting;
 import com.example.staffpad.utils.SharedPreferencesHelper;
 import com.example.staffpad.database.PageLayerEntity;
+import com.example.staffpad.database.AnnotationCodec;
+import com.example.staffpad.database.AnnotationEntity;
 import com.example.staffpad.database.AppDatabase;
 import com.example.staffpad.database.PageSettingsEntity;
 import androidx.recyclerview.widget.LinearLayoutManager;
@@ -40,11 +53,8 @@ import com.google.android.material.slider.Slider;
 import com.example.staffpad.database.AudioEntity;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import android.os.ParcelFileDescriptor;
-import android.graphics.pdf.PdfRenderer;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.view.ViewConfiguration;
@@ -101,16 +111,22 @@ public class SheetDetailFragment extends Fragment {
     private com.pierfrancescosoffritti.androidyoutubeplayer.core.player.views.YouTubePlayerView youTubePlayerView;
     private com.pierfrancescosoffritti.androidyoutubeplayer.core.player.YouTubePlayer youTubePlayer;
     // When true, we suppress compositing the persisted annotation bitmap while in annotation mode.
-    private boolean suppressAnnotationComposite = false;
     private static final String TAG = "SheetDetailFragment";
     private static final String ARG_SHEET_ID = "sheet_id";
     private static final String ARG_INITIAL_PAGE = "initial_page";
     private long sheetId = -1;
     private SheetViewModel sheetViewModel;
     private PhotoView photoView;
+    private PageTileView pageTileView;
+    // Persisted annotation layers, drawn above the page instead of into it
+    private AnnotationLayerView annotationLayerView;
+    // Unscaled page bitmap currently shown in photoView (pinned in the bitmap pool)
+    private Bitmap displayedPageBitmap;
+    // Base raster shared by the current page's observers (pinned in the bitmap pool)
+    private BaseRaster activeBaseHolder;
     private List<PageLayerEntity> activeLayers = new ArrayList<>();
-    private LiveData<List<PageLayerEntity>> activeLayersLiveData;
-    private LiveData<com.example.staffpad.database.PageSettingsEntity> pageSettingsLiveData;
+    // Combined layers + settings of the displayed page
+    private PageStateLiveData pageStateLiveData;
 
     private SharedPreferencesHelper preferencesHelper;
     private long currentSheetId = -1;
@@ -120,54 +136,38 @@ public class SheetDetailFragment extends Fragment {
     private Paint cropPaint;
     private Paint cropBorderPaint;
 
-    private PDDocument document;
-    private PDFRenderer renderer;
     private File currentPdfFile;
-    private final Object renderLock = new Object();
-    private boolean androidRendererOnly = false;
-    private int altPageCount = -1;
-
-    // Logical-to-original page mapping to support rearrange/delete feature
-    private java.util.List<Integer> pageMap = null; // if null, identity mapping
+    // Open document of the displayed sheet: backends, fallback and logical page mapping
+    private final Object handleLock = new Object();
+    private volatile PdfDocumentHandle pdfHandle;
+
+    // Render workers for the visible page, neighbour prefetch and exports; shut down with the view
+    private RenderScheduler renderScheduler;
+    private final java.util.concurrent.atomic.AtomicInteger prefetchGeneration = new java.util.concurrent.atomic.AtomicInteger();
+    // Quick first pass shown while the full-resolution page is rendered, as a share of the full render scale
+    private static final float PREVIEW_FRACTION = 1f / 3f;
+    // Page renders fit the photo view exactly; zoomed-in detail comes from the tile view
+    private static final float FALLBACK_RENDER_SCALE = 1.5f;
+    private static final float MIN_RENDER_SCALE = 0.25f;
+    private static final float LOW_MEMORY_SCALE_FACTOR = 0.75f;
+    private static final long VIEWPORT_REFRESH_DELAY_MS = 150;
+    private static final long LOW_MEMORY_CHECK_INTERVAL_MS = 2000;
+    private volatile long lowMemoryCheckedAt = 0;
+    private volatile boolean lowMemory = false;
+    // Fixed when the view is created, so a page keeps its size and cache keys while memory pressure changes
+    private volatile float renderScaleFactor = 1f;
+    // Measured size of the photo view; 0 until the first layout
+    private volatile int viewportWidth = 0;
+    private volatile int viewportHeight = 0;
+    private final Runnable viewportRefresh = () -> {
+        if (isAdded() && currentPdfFile != null) refreshPage();
+    };
+    // Bumped on every page display so a late preview never replaces the full render
+    private final java.util.concurrent.atomic.AtomicInteger pageDisplaySeq = new java.util.concurrent.atomic.AtomicInteger();
 
     private int mapLogicalToOriginal(int logicalIndex) {
-        if (pageMap == null) return logicalIndex;
-        if (logicalIndex < 0 || logicalIndex >= pageMap.size()) return 0;
-        return pageMap.get(logicalIndex);
-    }
-
-    private void buildPageMapping(SheetEntity sheet, int originalPageCount) {
-        pageMap = null;
-        try {
-            java.util.HashSet<Integer> deleted = new java.util.HashSet<>();
-            if (sheet.getDeletedPagesJson() != null && !sheet.getDeletedPagesJson().isEmpty()) {
-                org.json.JSONArray del = new org.json.JSONArray(sheet.getDeletedPagesJson());
-                for (int i = 0; i < del.length(); i++) {
-                    deleted.add(del.getInt(i));
-                }
-            }
-            java.util.ArrayList<Integer> map = new java.util.ArrayList<>();
-            if (sheet.getPageOrderJson() != null && !sheet.getPageOrderJson().isEmpty()) {
-                org.json.JSONArray arr = new org.json.JSONArray(sheet.getPageOrderJson());
-                for (int i = 0; i < arr.length(); i++) {
-                    int orig = arr.getInt(i);
-                    if (!deleted.contains(orig) && orig >= 0 && orig < originalPageCount) {
-                        map.add(orig);
-                    }
-                }
-            } else {
-                for (int orig = 0; orig < originalPageCount; orig++) {
-                    if (!deleted.contains(orig)) map.add(orig);
-                }
-            }
-            // Fallback to identity if empty
-            if (!map.isEmpty()) {
-                pageMap = map;
-            }
-        } catch (Throwable ignore) {
-            // keep pageMap null (identity)
-            pageMap = null;
-        }
+        PdfDocumentHandle handle = pdfHandle;
+        return handle != null ? handle.toOriginal(logicalIndex) : logicalIndex;
     }
 
     public SheetDetailFragment() {
@@ -277,6 +277,31 @@ public class SheetDetailFragment extends Fragment {
             sLastInstanceRef = new java.lang.ref.WeakReference<>(this);
         super.onViewCreated(view, savedInstanceState);
         photoView = view.findViewById(R.id.photo_view);
+        renderScaleFactor = checkLowMemory() ? LOW_MEMORY_SCALE_FACTOR : 1f;
+        // Re-rasterize the visible area in tiles while zoomed in
+        pageTileView = view.findViewById(R.id.page_tile_view);
+        annotationLayerView = view.findViewById(R.id.annotation_layer_view);
+        if (photoView != null) {
+            photoView.setOnMatrixChangeListener(rect -> {
+                if (pageTileView != null) pageTileView.setDisplayRect(rect);
+                if (annotationLayerView != null) annotationLayerView.setDisplayRect(rect);
+            });
+        }
+        if (photoView != null) {
+            // Renders are sized to the view; re-render after rotation or a split-screen resize
+            photoView.addOnLayoutChangeListener((v, left, top, right, bottom, oldLeft, oldTop, oldRight, oldBottom) -> {
+                int w = right - left;
+                int h = bottom - top;
+                if (w <= 0 || h <= 0 || (w == viewportWidth && h == viewportHeight)) return;
+                boolean resized = viewportWidth > 0;
+                viewportWidth = w;
+                viewportHeight = h;
+                if (resized) {
+                    v.removeCallbacks(viewportRefresh);
+                    v.postDelayed(viewportRefresh, VIEWPORT_REFRESH_DELAY_MS);
+                }
+            });
+        }
         // Bottom player is now lazy-inflated via ViewStub; do not touch until needed
         bottomPlayerContainer = view.findViewById(R.id.bottom_player_container); // may be null until inflated
         youTubePlayerView = null; // will be assigned upon inflation
@@ -286,6 +311,10 @@ public class SheetDetailFragment extends Fragment {
         // Annotation UI setup (no standalone entry button; controlled via toolbox)
         annotationToolbar = view.findViewById(R.id.annotation_toolbar);
         annotationOverlay = view.findViewById(R.id.annotation_overlay);
+        if (annotationOverlay != null) {
+            // Low-latency pen strokes; falls back to drawing in the overlay if the view is missing
+            try { annotationOverlay.setFrontBufferView(view.findViewById(R.id.in_progress_strokes)); } catch (Throwable ignore) {}
+        }
         View toolbar = annotationToolbar;
         AnnotationOverlayView overlay = annotationOverlay;
         if (toolbar != null && overlay != null) {
@@ -534,56 +563,20 @@ public class SheetDetailFragment extends Fragment {
                         .setPositiveButton("Yes", (d,w) -> {
                             // Clear current overlay content
                             overlay.clear();
-                            // Also replace current active annotation layer with a clear one (transparent)
+                            // Also empty the active annotation layer
                             new Thread(() -> {
                                 try {
                                     AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
                                     PageLayerEntity layer = db.pageLayerDao().getActiveAnnotationLayer(currentSheetId, currentPage);
-
-                                    int targetW = Math.max(1, overlay.getWidth());
-                                    int targetH = Math.max(1, overlay.getHeight());
-                                    try {
-                                        android.graphics.drawable.Drawable d2 = photoView.getDrawable();
-                                        if (d2 != null && d2.getIntrinsicWidth() > 0 && d2.getIntrinsicHeight() > 0) {
-                                            targetW = d2.getIntrinsicWidth();
-                                            targetH = d2.getIntrinsicHeight();
-                                        }
-                                    } catch (Throwable ignored) {}
-
-                                    Bitmap empty = Bitmap.createBitmap(targetW, targetH, Bitmap.Config.ARGB_8888); // transparent by default
-
-                                    File dir = new File(requireContext().getFilesDir(), "annotations");
-                                    if (!dir.exists()) dir.mkdirs();
-
-                                    File outFile;
-                                    if (layer != null && layer.getLayerImagePath() != null && !layer.getLayerImagePath().isEmpty()) {
-                                        outFile = new File(layer.getLayerImagePath());
-                                    } else {
-                                        String fileName = "annot_sheet_" + currentSheetId + "_page_" + currentPage + "_" + System.currentTimeMillis() + ".png";
-                                        outFile = new File(dir, fileName);
-                                    }
-
-                                    java.io.FileOutputStream fos = new java.io.FileOutputStream(outFile);
-                                    empty.compress(Bitmap.CompressFormat.PNG, 100, fos);
-                                    fos.flush();
-                                    fos.close();
-                                    empty.recycle();
-
-                                    long now = System.currentTimeMillis();
-                                    if (layer == null) {
-                                        int maxOrder = db.pageLayerDao().getMaxOrderIndex(currentSheetId, currentPage);
-                                        layer = new PageLayerEntity(currentSheetId, currentPage, "Annotations", "ANNOTATION");
-                                        layer.setActive(true);
-                                        layer.setOrderIndex(maxOrder + 1);
-                                        layer.setLayerImagePath(outFile.getAbsolutePath());
-                                        layer.setCreatedAt(now);
-                                        layer.setModifiedAt(now);
-                                        db.pageLayerDao().insert(layer);
-                                    } else {
-                                        layer.setLayerImagePath(outFile.getAbsolutePath());
-                                        layer.setModifiedAt(now);
+                                    if (layer == null) return;
+                                    String legacyImage = layer.getLayerImagePath();
+                                    db.runInTransaction(() -> {
+                                        db.annotationDao().deleteForLayer(layer.getId());
+                                        layer.setLayerImagePath(null);
+                                        layer.setModifiedAt(System.currentTimeMillis());
                                         db.pageLayerDao().update(layer);
-                                    }
+                                    });
+                                    deleteLegacyAnnotationFiles(legacyImage);
 
                                     runOnUiThread(this::refreshPage);
                                 } catch (Throwable t) {
@@ -642,7 +635,7 @@ public class SheetDetailFragment extends Fragment {
                             textBox.textSizeSp = sz;
                             textBox.paint.setTextSize(sz * getResources().getDisplayMetrics().scaledDensity);
                             textBox.paint.setFakeBoldText(textBox.bold);
-                            overlay.invalidate();
+                            overlay.notifyItemsChanged();
                         })
                         .setNegativeButton("Cancel", null)
                         .show();
@@ -716,167 +709,84 @@ public class SheetDetailFragment extends Fragment {
         }
 
         // Load the PDF
-        new Thread(() -> {
+        final int generation = scheduler().nextGeneration();
+        scheduler().submitVisible(generation, () -> {
             try {
                 File pdfFile = new File(sheet.getFilePath());
                 currentPdfFile = pdfFile;
 
                 if (!pdfFile.exists()) {
                     Log.e(TAG, "PDF file does not exist: " + pdfFile.getAbsolutePath());
-                    runOnUiThread(() -> showErrorImage("Error: PDF file not found"));
+                    postIfCurrent(generation, () -> showErrorImage("Error: PDF file not found"));
                     return;
                 }
 
-                // Close previous document if exists
-                if (document != null) {
-                    try {
-                        document.close();
-                    } catch (IOException e) {
-                        Log.e(TAG, "Error closing previous document", e);
-                    }
+                // Backend measured on an earlier open; under memory pressure PDFBox is skipped for this open
+                RendererSelector.Backend preferred = RendererSelector.fromName(sheet.getPreferredRenderer());
+                boolean usePdfBox = preferred != RendererSelector.Backend.ANDROID && !isLowMemory();
+                if (!usePdfBox) {
+                    Log.w(TAG, "Skipping PDFBox load (preferred=" + preferred + "); using Android PdfRenderer only");
                 }
-
-                boolean usePdfBox = shouldUsePdfBox(pdfFile);
-                if (usePdfBox) {
-                    PDDocument newDoc = null;
-                    PDFRenderer newRenderer = null;
-                    boolean swapped = false;
-                    try {
-                        // Load into locals first to avoid losing references on race conditions
-                        newDoc = PDDocument.load(pdfFile, MemoryUsageSetting.setupTempFileOnly());
-                        newRenderer = new PDFRenderer(newDoc);
-                        // Atomically swap under lock and close any previous document
-                        synchronized (renderLock) {
-                            PDDocument oldDoc = document;
-                            document = newDoc;
-                            renderer = newRenderer;
-                            androidRendererOnly = false;
-                            altPageCount = -1;
-                            if (oldDoc != null && oldDoc != newDoc) {
-                                try { oldDoc.close(); } catch (IOException ignore) {}
-                            }
-                            swapped = true;
-                        }
-                    } catch (OutOfMemoryError oom) {
-                        Log.e(TAG, "PDDocument.load OOM, switching to Android PdfRenderer only", oom);
-                        // Ensure any previously held PDDocument is closed before switching
-                        synchronized (renderLock) {
-                            if (document != null) {
-                                try { document.close(); } catch (IOException ignore) {}
-                            }
-                            document = null;
-                            renderer = null;
-                            androidRendererOnly = true;
-                        }
-                        // Determine page count via Android PdfRenderer
-                        try {
-                            ParcelFileDescriptor fd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
-                            PdfRenderer pr = new PdfRenderer(fd);
-                            altPageCount = pr.getPageCount();
-                            pr.close();
-                            fd.close();
-                        } catch (Exception e) {
-                            Log.e(TAG, "Failed to get page count via Android PdfRenderer", e);
-                            altPageCount = -1;
-                        }
-                    } catch (Throwable t) {
-                        Log.e(TAG, "PDFBox load/render init failed; will fallback to Android PdfRenderer", t);
-                        // Ensure locals are closed if swap didn't happen
-                        if (!swapped) {
-                            try { if (newDoc != null) newDoc.close(); } catch (IOException ignore) {}
-                        }
-                        synchronized (renderLock) {
-                            document = null;
-                            renderer = null;
-                            androidRendererOnly = true;
-                        }
-                        try {
-                            ParcelFileDescriptor fd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
-                            PdfRenderer pr = new PdfRenderer(fd);
-                            altPageCount = pr.getPageCount();
-                            pr.close();
-                            fd.close();
-                        } catch (Exception e) {
-                            Log.e(TAG, "Failed to get page count via Android PdfRenderer", e);
-                            altPageCount = -1;
-                        }
+                PdfDocumentHandle handle = PdfDocumentHandle.open(pdfFile, usePdfBox);
+                handle.setFallbackListener(cause -> {
+                    // Don't try PDFBox for this sheet again after it ran out of memory
+                    if (cause instanceof OutOfMemoryError) {
+                        recordPreferredRenderer(sheet, RendererSelector.Backend.ANDROID);
                     }
-                } else {
-                    // Skip PDFBox entirely due to low-memory/large file conditions
-                    Log.w(TAG, "Skipping PDFBox load due to memory/file-size constraints; using Android PdfRenderer only");
-                    // Ensure any previously held PDDocument is closed before switching
-                    synchronized (renderLock) {
-                        if (document != null) {
-                            try { document.close(); } catch (IOException ignore) {}
-                        }
-                        document = null;
-                        renderer = null;
-                        androidRendererOnly = true;
-                    }
-                    try {
-                        ParcelFileDescriptor fd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
-                        PdfRenderer pr = new PdfRenderer(fd);
-                        altPageCount = pr.getPageCount();
-                        pr.close();
-                        fd.close();
-                    } catch (Exception e) {
-                        Log.e(TAG, "Failed to get page count via Android PdfRenderer", e);
-                        altPageCount = -1;
-                    }
-                }
+                });
+                // Logical pages honor the sheet's custom order and deleted pages
+                handle.setMapping(PageMapping.forSheet(sheet, handle.getPageCount()));
+                setPdfHandle(handle);
 
-                // Determine original and effective page counts, and build mapping
-                int originalTotal = getTotalPageCountInternal(pdfFile);
-                buildPageMapping(sheet, originalTotal);
                 int effectiveTotal = getTotalPageCount();
                 if (effectiveTotal > 0 && currentPage >= effectiveTotal) {
                     currentPage = 0;
                 }
                 int originalIndex = mapLogicalToOriginal(currentPage);
 
-                // Render base page with PdfBox; fallback to Android PdfRenderer on failure
-                Bitmap baseBitmap;
-                try {
-                    float scale = (!androidRendererOnly && renderer != null) ? getPdfBoxRenderScale() : getAndroidRenderScale();
-                    synchronized (renderLock) {
-                        baseBitmap = renderer != null ? renderer.renderImage(originalIndex, scale) : null;
-                    }
-                } catch (OutOfMemoryError oom) {
-                    Log.e(TAG, "PdfBox render OOM, switching to Android PdfRenderer", oom);
-                    switchToAndroidRendererOnly(pdfFile);
-                    float scale = getAndroidRenderScale();
-                    baseBitmap = renderWithAndroidPdfRenderer(pdfFile, originalIndex, scale);
-                } catch (Throwable t) {
-                    Log.e(TAG, "PdfBox render failed, falling back to Android PdfRenderer", t);
-                    switchToAndroidRendererOnly(pdfFile);
-                    float scale = getAndroidRenderScale();
-                    baseBitmap = renderWithAndroidPdfRenderer(pdfFile, originalIndex, scale);
-                }
-
-                if (baseBitmap == null) {
-                    runOnUiThread(() -> showErrorImage("Error rendering PDF page"));
-                    return;
-                }
-
                 // If fragment is no longer attached, don't proceed
                 if (!isAdded()) {
                     return;
                 }
 
+                // Serve the page from the in-memory cache when it was composited recently (e.g. returning to a piece)
+                BaseRaster base = null;
+                if (!showCachedPage(sheet.getId(), originalIndex, generation)) {
+                    // Low-resolution pass first so something is on screen while the full page renders
+                    showPreviewPage(sheet.getId(), originalIndex, generation);
+                    // Render base page with PdfBox; fallback to Android PdfRenderer on failure
+                    base = renderBaseRaster(sheet.getId(), originalIndex);
+                    if (base == null) {
+                        postIfCurrent(generation, () -> showErrorImage("Error rendering PDF page"));
+                        return;
+                    }
+                }
+                if (!scheduler().isCurrent(generation)) return;
+
                 // Load and apply layers using original page index
-                loadAndApplyLayers(sheet.getId(), originalIndex, baseBitmap);
+                loadAndApplyLayers(sheet.getId(), originalIndex, base, generation);
+
+                schedulePrefetch(currentPage);
+                // First open: the first page is shown with the default backend; measure both afterwards
+                if (preferred == null && usePdfBox) {
+                    scheduleRendererTrial(sheet, handle);
+                }
 
             } catch (Exception e) {
                 Log.e(TAG, "Error loading PDF", e);
-                runOnUiThread(() -> showErrorImage("Error loading PDF: " + e.getMessage()));
+                postIfCurrent(generation, () -> showErrorImage("Error loading PDF: " + e.getMessage()));
             }
-        }).start();
+        });
     }
 
-    private void loadAndApplyLayers(long sheetId, int pageNumber, Bitmap baseBitmap) {
+    private void loadAndApplyLayers(long sheetId, int pageNumber, BaseRaster base, int generation) {
         // Ensure LiveData.observe is invoked on the main thread
         if (android.os.Looper.myLooper() != android.os.Looper.getMainLooper()) {
-            runOnUiThread(() -> loadAndApplyLayers(sheetId, pageNumber, baseBitmap));
+            runOnUiThread(() -> loadAndApplyLayers(sheetId, pageNumber, base, generation));
+            return;
+        }
+        // A newer page request is already on its way; don't attach observers for this one
+        if (renderScheduler == null || !renderScheduler.isCurrent(generation)) {
             return;
         }
 
@@ -896,212 +806,474 @@ public class SheetDetailFragment extends Fragment {
         }
         AppDatabase db = AppDatabase.getDatabase(appCtx);
 
-        // Remove previous observer to avoid accumulation
-        if (activeLayersLiveData != null) {
+        // Remove the previous page's observer to avoid accumulation
+        if (pageStateLiveData != null) {
             try {
-                activeLayersLiveData.removeObservers(vlo);
+                pageStateLiveData.removeObservers(vlo);
             } catch (Exception ignored) {}
         }
 
-        // Remove previous settings observer as well
-        if (pageSettingsLiveData != null) {
-            try {
-                pageSettingsLiveData.removeObservers(vlo);
-            } catch (Exception ignored) {}
-        }
-
-        // Get active layers for this page and observe
-        activeLayersLiveData = db.pageLayerDao().getActiveLayersForPage(sheetId, pageNumber);
-        activeLayersLiveData.observe(vlo, layers -> {
-            // Apply on background thread regardless of layers list emptiness so PageSettings are honored
-            new Thread(() -> {
+        // Base raster is shared by this page's composites and rendered lazily when the composite is not cached.
+        // The holder keeps it pinned until the next page replaces the observer.
+        releaseBaseHolder(activeBaseHolder);
+        final BaseRaster baseHolder = base != null ? base : new BaseRaster(null, 0L);
+        BitmapPool.getInstance().pin(baseHolder.bitmap);
+        activeBaseHolder = baseHolder;
+
+        // Layers and page settings (e.g. after CropActivity saves/restores) as one debounced, de-duplicated stream:
+        // each database change composites once
+        final java.util.concurrent.atomic.AtomicInteger latestState = new java.util.concurrent.atomic.AtomicInteger();
+        pageStateLiveData = new PageStateLiveData(
+                db.pageLayerDao().getActiveLayersForPage(sheetId, pageNumber),
+                db.pageSettingsDao().observeByPage(sheetId, pageNumber));
+        pageStateLiveData.observe(vlo, state -> {
+            final int seq = latestState.incrementAndGet();
+            scheduler().submitVisible(generation, () -> {
+                // A newer state of this page superseded this one
+                if (seq != latestState.get()) return;
                 try {
-                    // Start from base
-                    Bitmap working = baseBitmap;
-                    // Apply virtual page settings first (rotation -> crop -> adjustments)
-                    try {
-                        AppDatabase adb = AppDatabase.getDatabase(requireContext().getApplicationContext());
-                        PageSettingsEntity settings = adb.pageSettingsDao().getByPage(sheetId, pageNumber);
-                        if (settings != null) {
-                            if (settings.getRotation() != 0f) {
-                                working = applyRotation(working, settings.getRotation());
-                            }
-                            if (!(Math.abs(settings.getCropLeft()) < 1e-3 && Math.abs(settings.getCropTop()) < 1e-3 && Math.abs(settings.getCropRight() - 1f) < 1e-3 && Math.abs(settings.getCropBottom() - 1f) < 1e-3)) {
-                                // Build a temporary PageLayerEntity-like wrapper to reuse applyCrop
-                                PageLayerEntity temp = new PageLayerEntity(sheetId, pageNumber, "__virtual_crop__", "CROP");
-                                temp.setCropLeft(settings.getCropLeft());
-                                temp.setCropTop(settings.getCropTop());
-                                temp.setCropRight(settings.getCropRight());
-                                temp.setCropBottom(settings.getCropBottom());
-                                working = applyCrop(working, temp);
-                            }
-                            if (settings.getBrightness() != 0f || Math.abs(settings.getContrast() - 1f) > 1e-3) {
-                                applyAdjustmentsInPlace(working, settings.getBrightness(), settings.getContrast());
-                            }
-                        }
-                    } catch (Throwable t) {
-                        Log.w(TAG, "Failed to apply page settings", t);
+                    Bitmap compositeBitmap = obtainPageComposite(sheetId, pageNumber, state.settings, state.layers, baseHolder);
+                    if (compositeBitmap == null) {
+                        postIfCurrent(generation, () -> showErrorImage("Error rendering page"));
+                        return;
                     }
-
-                    // Then apply annotation layers (active, non-CROP) if any
-                    Bitmap compositeBitmap = (layers != null && !layers.isEmpty()) ? applyLayers(working, layers) : working;
-                    runOnUiThread(() -> displayBitmap(compositeBitmap));
+                    if (seq != latestState.get()) {
+                        BitmapPool.getInstance().unpin(compositeBitmap);
+                        return;
+                    }
+                    int width = compositeBitmap.getWidth();
+                    int height = compositeBitmap.getHeight();
+                    PageTileView.Source tiles = buildTileSource(sheetId, pageNumber, state.settings, state.layers, compositeBitmap);
+                    postPage(generation, compositeBitmap, tiles);
+                    postAnnotations(generation, state.layers, width, height);
                 } catch (Exception e) {
-                    Log.e(TAG, "Error applying layers", e);
-                    runOnUiThread(() -> displayBitmap(baseBitmap));
+                    Log.e(TAG, "Error applying page state", e);
+                    Bitmap fallback = baseHolder.bitmap;
+                    // postPage takes over a pin of its own
+                    BitmapPool.getInstance().pin(fallback);
+                    postPage(generation, fallback, null);
                 }
-            }).start();
+            });
         });
+    }
 
-        // Also observe virtual page settings so that main screen updates immediately after CropActivity saves/restores
-        pageSettingsLiveData = db.pageSettingsDao().observeByPage(sheetId, pageNumber);
-        pageSettingsLiveData.observe(vlo, settings -> {
-            new Thread(() -> {
-                try {
-                    Bitmap working = baseBitmap;
-                    if (settings != null) {
-                        if (settings.getRotation() != 0f) {
-                            working = applyRotation(working, settings.getRotation());
-                        }
-                        if (!(Math.abs(settings.getCropLeft()) < 1e-3 && Math.abs(settings.getCropTop()) < 1e-3 && Math.abs(settings.getCropRight() - 1f) < 1e-3 && Math.abs(settings.getCropBottom() - 1f) < 1e-3)) {
-                            PageLayerEntity temp = new PageLayerEntity(sheetId, pageNumber, "__virtual_crop__", "CROP");
-                            temp.setCropLeft(settings.getCropLeft());
-                            temp.setCropTop(settings.getCropTop());
-                            temp.setCropRight(settings.getCropRight());
-                            temp.setCropBottom(settings.getCropBottom());
-                            working = applyCrop(working, temp);
-                        }
-                        if (settings.getBrightness() != 0f || Math.abs(settings.getContrast() - 1f) > 1e-3) {
-                            applyAdjustmentsInPlace(working, settings.getBrightness(), settings.getContrast());
-                        }
-                    }
-                    // Overlay current active layers if available
-                    List<PageLayerEntity> curLayers = activeLayersLiveData != null ? activeLayersLiveData.getValue() : null;
-                    Bitmap compositeBitmap = (curLayers != null && !curLayers.isEmpty()) ? applyLayers(working, curLayers) : working;
-                    runOnUiThread(() -> displayBitmap(compositeBitmap));
-                } catch (Exception e) {
-                    Log.e(TAG, "Error applying settings observer", e);
-                    runOnUiThread(() -> displayBitmap(baseBitmap));
+    /**
+     * Returns the composited page for the given state, from the page cache when possible.
+     * On a miss the base raster is rendered (once per holder, and again when the crop or rotation
+     * changed) and the result is cached. The page is pinned; the caller must unpin it or hand it to {@link #postPage}.
+     */
+    private Bitmap obtainPageComposite(long sheetId, int pageNumber, PageSettingsEntity settings,
+                                       List<PageLayerEntity> layers, BaseRaster baseHolder) {
+        PageBitmapCache cache = PageBitmapCache.getInstance();
+        long state = PageBitmapCache.stateHash(settings, layers);
+        Bitmap cached = lookupComposite(sheetId, pageNumber, settings, state);
+        if (cached != null) {
+            return cached;
+        }
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap base;
+        long geometry = geometryKey(settings);
+        synchronized (baseHolder) {
+            if (baseHolder.bitmap == null || baseHolder.bitmap.isRecycled() || baseHolder.geometry != geometry) {
+                Bitmap previous = baseHolder.bitmap;
+                baseHolder.bitmap = renderBasePage(pageNumber, settings);
+                baseHolder.geometry = geometry;
+                // Owned by the holder until releaseBaseHolder
+                pool.pin(baseHolder.bitmap);
+                if (previous != null) {
+                    pool.release(previous);
+                    pool.unpin(previous);
                 }
-            }).start();
-        });
+            }
+            base = baseHolder.bitmap;
+            // Keep the base out of the pool while composing, even if the holder is released meanwhile
+            pool.pin(base);
+        }
+        if (base == null) {
+            return null;
+        }
+        Bitmap composite;
+        try {
+            composite = composePage(sheetId, pageNumber, base, settings, layers);
+        } finally {
+            pool.unpin(base);
+        }
+        composite = reduceDepth(composite, PageColorDepth.isMonochrome(composite));
+        float scale = getCompositeScale(pageNumber, settings);
+        composite = cache.putPinned(PageBitmapCache.key(sheetId, pageNumber, scale, state), composite);
+        File pdfFile = currentPdfFile;
+        Context ctx = getContext();
+        if (pdfFile != null && ctx != null) {
+            DiskPageCache.getInstance(ctx).put(DiskPageCache.key(pdfFile, pageNumber, scale, state), composite);
+        }
+        return composite;
+    }
+
+    /**
+     * Looks up a composited page in memory, then on disk (promoting disk hits into memory).
+     * The page is returned pinned (see {@link PageBitmapCache#getPinned}). Blocking; call from a worker thread.
+     */
+    private Bitmap lookupComposite(long sheetId, int pageNumber, PageSettingsEntity settings, long state) {
+        float scale = getCompositeScale(pageNumber, settings);
+        String memoryKey = PageBitmapCache.key(sheetId, pageNumber, scale, state);
+        Bitmap cached = PageBitmapCache.getInstance().getPinned(memoryKey);
+        if (cached != null) return cached;
+        File pdfFile = currentPdfFile;
+        Context ctx = getContext();
+        if (pdfFile == null || ctx == null) return null;
+        cached = DiskPageCache.getInstance(ctx).get(DiskPageCache.key(pdfFile, pageNumber, scale, state));
+        if (cached != null) {
+            cached = PageBitmapCache.getInstance().putPinned(memoryKey, cached);
+        }
+        return cached;
     }
 
-    private void displayBitmap(Bitmap bitmap) {
-        if (photoView != null && bitmap != null) {
-            if (photoView.getVisibility() != View.VISIBLE) {
-                photoView.setVisibility(View.VISIBLE);
+    /** Gives the base raster of superseded observers back to the bitmap pool. */
+    private void releaseBaseHolder(BaseRaster holder) {
+        if (holder == null) return;
+        Bitmap base;
+        synchronized (holder) {
+            base = holder.bitmap;
+            holder.bitmap = null;
+        }
+        if (base != null) {
+            BitmapPool pool = BitmapPool.getInstance();
+            pool.release(base);
+            pool.unpin(base);
+        }
+    }
+
+    /**
+     * Posts a pinned page bitmap for display if the generation is still current. Its pin goes over to
+     * {@link #displayPage}, or is dropped if the page is not displayed, so the page cache cannot hand it back
+     * to the pool between the lookup and the UI thread taking it over.
+     * Upload to the GPU starts here on the worker, so the first frame with the new page does not have to.
+     */
+    private void postPage(int generation, Bitmap page, PageTileView.Source tiles) {
+        if (page == null) return;
+        BitmapPool pool = BitmapPool.getInstance();
+        androidx.fragment.app.FragmentActivity activity = getActivity();
+        if (activity == null) {
+            pool.unpin(page);
+            return;
+        }
+        page.prepareToDraw();
+        activity.runOnUiThread(() -> {
+            RenderScheduler scheduler = renderScheduler;
+            if (isAdded() && scheduler != null && scheduler.isCurrent(generation)) {
+                displayPage(page, tiles);
+            } else {
+                pool.unpin(page);
             }
-            photoView.setImageBitmap(bitmap);
-            photoView.setMaximumScale(5.0f);
+        });
+    }
 
-            // Update page indicator
-            int total = getTotalPageCount();
-            if (total > 0) {
-                updatePageIndicator(currentPage + 1, total);
+    /**
+     * Loads the page's annotation overlays at the size of its page bitmap and hands them to the annotation layer
+     * view if the generation is still current. Call from a worker thread, after posting the page bitmap.
+     */
+    private void postAnnotations(int generation, List<PageLayerEntity> layers, int width, int height) {
+        List<Bitmap> overlays = new ArrayList<>();
+        if (layers != null) {
+            for (PageLayerEntity layer : layers) {
+                if (layer == null || !layer.isActive() || !layer.isAnnotationOverlay()) continue;
+                Bitmap bmp = acquireLayerOverlay(layer, width, height);
+                if (bmp == null) continue;
+                // Upload off the main thread, like the page itself
+                bmp.prepareToDraw();
+                overlays.add(bmp);
+            }
+        }
+        androidx.fragment.app.FragmentActivity activity = getActivity();
+        if (activity == null) {
+            for (Bitmap bmp : overlays) BitmapPool.getInstance().unpin(bmp);
+            return;
+        }
+        activity.runOnUiThread(() -> {
+            RenderScheduler scheduler = renderScheduler;
+            if (isAdded() && annotationLayerView != null && scheduler != null && scheduler.isCurrent(generation)) {
+                annotationLayerView.setLayers(overlays, photoView != null ? photoView.getDisplayRect() : null);
+            } else {
+                for (Bitmap bmp : overlays) BitmapPool.getInstance().unpin(bmp);
             }
+        });
+    }
 
-            // Setup page navigation
-            setupPageNavigation();
+    /**
+     * Returns an annotation layer's overlay at width×height, pinned (see {@link OverlayBitmapCache#acquire}):
+     * drawn from its vector ops, or decoded from the PNG of a layer saved before ops were stored.
+     * Call from a worker thread.
+     */
+    private Bitmap acquireLayerOverlay(PageLayerEntity layer, int width, int height) {
+        if (!layer.isVectorAnnotation()) {
+            return OverlayBitmapCache.getInstance().acquire(layer.getLayerImagePath(), width, height);
+        }
+        AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+        return OverlayBitmapCache.getInstance().acquire(annotationOverlayName(layer), layer.getModifiedAt(), width, height,
+                (canvas, w, h) -> AnnotationRenderer.draw(canvas, db.annotationDao().getForLayerSync(layer.getId()), w, h));
+    }
+
+    /** Name of a vector annotation layer in the {@link OverlayBitmapCache}. */
+    private static String annotationOverlayName(PageLayerEntity layer) {
+        return "annotations:" + layer.getId();
+    }
+
+    /**
+     * Composes page adjustments and layers over the base raster in a single {@link PageCompositor} pass.
+     * The settings crop and rotation are not applied here: the base raster is already rasterized with them
+     * (see {@link #renderBasePage}). The result is always a new pooled bitmap owned by the caller.
+     */
+    private Bitmap composePage(long sheetId, int pageNumber, Bitmap baseBitmap, PageSettingsEntity settings,
+                               List<PageLayerEntity> layers) {
+        PageCompositor compositor = new PageCompositor(baseBitmap);
+        if (settings != null) {
+            compositor.adjust(settings.getBrightness(), settings.getContrast());
+        }
+        addLayers(compositor, layers);
+        // One pass into a new pooled bitmap; the base raster is only read
+        return compositor.draw();
+    }
+
+    /**
+     * Finished pages that are black and white are kept as RGB_565 when the reduced-depth setting is on.
+     * Only composites are reduced; the base raster stays ARGB because compositing draws from it.
+     */
+    private Bitmap reduceDepth(Bitmap page, boolean monochrome) {
+        SharedPreferencesHelper prefs = preferencesHelper;
+        if (!monochrome || prefs == null || !prefs.isReducedDepthPages()) return page;
+        return PageColorDepth.reduce(page);
+    }
+
+    /**
+     * Displays the cached composite for the page if present. Safe to call from a worker thread.
+     * @return true if a cached bitmap was posted for display
+     */
+    private boolean showCachedPage(long sheetId, int pageNumber, int generation) {
+        try {
+            AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+            PageSettingsEntity settings = db.pageSettingsDao().getByPage(sheetId, pageNumber);
+            List<PageLayerEntity> layers = db.pageLayerDao().getActiveLayersForPageSync(sheetId, pageNumber);
+            long state = PageBitmapCache.stateHash(settings, layers);
+            Bitmap cached = lookupComposite(sheetId, pageNumber, settings, state);
+            if (cached == null) {
+                return false;
+            }
+            int width = cached.getWidth();
+            int height = cached.getHeight();
+            PageTileView.Source tiles = buildTileSource(sheetId, pageNumber, settings, layers, cached);
+            postPage(generation, cached, tiles);
+            postAnnotations(generation, layers, width, height);
+            return true;
+        } catch (Throwable t) {
+            Log.w(TAG, "Page cache lookup failed", t);
+            return false;
+        }
+    }
 
-            // Persist the current view (sheet + page) immediately after first successful render
-            if (currentSheetId != -1) {
-                try {
-                    preferencesHelper.saveLastViewedPage(currentSheetId, currentPage);
-                    Log.d(TAG, "displayBitmap: Saved last viewed page " + currentPage + " for sheet " + currentSheetId);
-                } catch (Exception e) {
-                    Log.w(TAG, "displayBitmap: Failed to save last viewed page", e);
+    /**
+     * Builds the description the tile view needs to re-rasterize the displayed composite while zoomed in.
+     * Returns null when the composite cannot be reproduced from the PDF alone (per-layer geometry or adjustments).
+     * Must be called from a worker thread.
+     */
+    private PageTileView.Source buildTileSource(long sheetId, int pageNumber, PageSettingsEntity settings,
+                                                List<PageLayerEntity> layers, Bitmap composite) {
+        File pdfFile = currentPdfFile;
+        if (pdfFile == null || composite == null) return null;
+        List<String> overlayPaths = new ArrayList<>();
+        if (layers != null) {
+            for (PageLayerEntity layer : layers) {
+                if (layer == null || !layer.isActive()) continue;
+                if (layer.hasRotation() || layer.hasCrop() || layer.hasAdjustments()) return null;
+                if (layer.isAnnotationOverlay()) continue; // drawn by the annotation layer view
+                if (layer.isVectorAnnotation()) return null; // tiles draw image overlays only
+                String path = layer.getLayerImagePath();
+                if (path != null && !path.isEmpty()) overlayPaths.add(path);
+            }
+        }
+        try {
+            float[] pageSize = getPagePointSize(pageNumber);
+            if (pageSize == null) return null;
+            // Same order as composePage: rotation -> crop, then scale to the composite's pixels
+            Matrix pageToContent = new Matrix();
+            float cropLeft = 0f, cropTop = 0f, cropRight = 1f, cropBottom = 1f;
+            ColorFilter filter = null;
+            if (settings != null) {
+                pageToContent.postRotate(settings.getRotation());
+                cropLeft = settings.getCropLeft();
+                cropTop = settings.getCropTop();
+                cropRight = settings.getCropRight();
+                cropBottom = settings.getCropBottom();
+                if (settings.getBrightness() != 0f || Math.abs(settings.getContrast() - 1f) > 1e-3) {
+                    filter = PageCompositor.adjustmentFilter(settings.getBrightness(), settings.getContrast());
                 }
             }
-
-            Log.d(TAG, "Bitmap displayed with layers applied");
+            RectF bounds = new RectF(0, 0, pageSize[0], pageSize[1]);
+            pageToContent.mapRect(bounds);
+            pageToContent.postTranslate(-bounds.left - cropLeft * bounds.width(), -bounds.top - cropTop * bounds.height());
+            float croppedWidth = Math.max(1f, (cropRight - cropLeft) * bounds.width());
+            float croppedHeight = Math.max(1f, (cropBottom - cropTop) * bounds.height());
+            pageToContent.postScale(composite.getWidth() / croppedWidth, composite.getHeight() / croppedHeight);
+
+            long state = PageBitmapCache.stateHash(settings, layers);
+            String key = PageBitmapCache.key(sheetId, pageNumber, getCompositeScale(pageNumber, settings), state);
+            return new PageTileView.Source(key, pdfFile, pageNumber, pageToContent,
+                    composite.getWidth(), composite.getHeight(), filter, overlayPaths);
+        } catch (Throwable t) {
+            Log.w(TAG, "Tiles unavailable for page " + pageNumber, t);
+            return null;
         }
     }
 
-    private Bitmap applyLayers(Bitmap baseBitmap, List<PageLayerEntity> layers) {
-        // Start with a mutable working bitmap to avoid multiple full-size allocations
-        Bitmap working = baseBitmap.copy(Bitmap.Config.ARGB_8888, true);
-        Canvas canvas = new Canvas(working);
-
-        for (PageLayerEntity layer : layers) {
-            if (!layer.isActive()) continue;
-
-            try {
-                // Apply rotation BEFORE crop to match CropActivity preview behavior
-                if (layer.hasRotation()) {
-                    Bitmap newBmp = applyRotation(working, layer.getRotation());
-                    if (working != baseBitmap && working != newBmp && !working.isRecycled()) {
-                        working.recycle();
-                    }
-                    working = newBmp;
-                    canvas.setBitmap(working);
-                }
+    /**
+     * Renders the page at {@link #PREVIEW_FRACTION} of the full scale with the same settings and layers as the full composite,
+     * so the later full render has the same aspect ratio and replaces it without a layout jump.
+     * Must be called from a worker thread.
+     */
+    private void showPreviewPage(long sheetId, int pageNumber, int generation) {
+        File pdfFile = currentPdfFile;
+        if (pdfFile == null) return;
+        final int seq = pageDisplaySeq.get();
+        try {
+            PdfDocumentHandle handle = pdfHandle;
+            if (handle == null) return;
+            AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+            PageSettingsEntity settings = db.pageSettingsDao().getByPage(sheetId, pageNumber);
+            int[] size = new int[2];
+            Matrix transform = pageTransform(pageNumber, settings, PREVIEW_FRACTION, size);
+            if (transform == null) return;
+            Bitmap preview = handle.renderRegionWithAndroid(pageNumber, transform, size[0], size[1]);
+            if (preview == null) return;
+            List<PageLayerEntity> layers = db.pageLayerDao().getActiveLayersForPageSync(sheetId, pageNumber);
+            Bitmap software = composePage(sheetId, pageNumber, preview, settings, layers);
+            BitmapPool.getInstance().release(preview);
+            // The preview is only ever drawn, never cached or read back, so it can live in GPU memory
+            Bitmap hardware = software.copy(Bitmap.Config.HARDWARE, false);
+            Bitmap composed;
+            if (hardware != null) {
+                BitmapPool.getInstance().release(software);
+                composed = hardware;
+            } else {
+                composed = reduceDepth(software, PageColorDepth.isMonochrome(software));
+                composed.prepareToDraw();
+            }
+            postIfCurrent(generation, () -> {
+                if (seq != pageDisplaySeq.get()) return;
+                displayBitmap(composed);
+            });
+            postAnnotations(generation, layers, composed.getWidth(), composed.getHeight());
+        } catch (Throwable t) {
+            Log.w(TAG, "Preview render failed for page " + pageNumber, t);
+        }
+    }
 
-                // Apply crop (creates a new bitmap). Recycle previous to save memory.
-                if (layer.hasCrop()) {
-                    Bitmap newBmp = applyCrop(working, layer);
-                    if (working != baseBitmap && working != newBmp && !working.isRecycled()) {
-                        working.recycle();
-                    }
-                    working = newBmp;
-                    canvas.setBitmap(working);
-                }
+    private void displayBitmap(Bitmap bitmap) {
+        // displayPage takes over a pin
+        BitmapPool.getInstance().pin(bitmap);
+        displayPage(bitmap, null);
+    }
+
+    /**
+     * Shows a page and takes over one pin on it, which keeps the bitmap out of the pool while PhotoView
+     * displays it and is dropped by {@link #releaseDisplayedPage} when the page is replaced.
+     */
+    private void displayPage(Bitmap bitmap, PageTileView.Source tiles) {
+        if (photoView == null || bitmap == null) {
+            BitmapPool.getInstance().unpin(bitmap);
+            return;
+        }
+        pageDisplaySeq.incrementAndGet();
+        if (photoView.getVisibility() != View.VISIBLE) {
+            photoView.setVisibility(View.VISIBLE);
+        }
+        // Cached pages may be delivered more than once (fast path + observers); keep zoom in that case
+        android.graphics.drawable.Drawable shown = photoView.getDrawable();
+        boolean alreadyShown = bitmap == displayedPageBitmap && shown != null;
+        if (alreadyShown) {
+            // The displayed page already holds a pin
+            BitmapPool.getInstance().unpin(bitmap);
+        } else {
+            releaseDisplayedPage();
+            displayedPageBitmap = bitmap;
+            photoView.setImageBitmap(fitToMaxTexture(bitmap));
+            photoView.setMaximumScale(5.0f);
+        }
+        // Tiles provide the detail when zoomed in (and for pages larger than the GPU texture limit)
+        if (pageTileView != null) {
+            pageTileView.setSource(tiles, photoView.getDisplayRect());
+        }
 
-                // Apply adjustments in-place to avoid extra allocation
-                if (layer.hasAdjustments()) {
-                    applyAdjustmentsInPlace(working, layer.getBrightness(), layer.getContrast());
-                }
+        // Update page indicator
+        int total = getTotalPageCount();
+        if (total > 0) {
+            updatePageIndicator(currentPage + 1, total);
+        }
 
-                // Composite annotation bitmap if provided, unless suppressed while in annotation mode
-                if (suppressAnnotationComposite && "ANNOTATION".equalsIgnoreCase(layer.getLayerType())) {
-                    // Skip drawing this layer while annotating so on-screen undo/redo reflects immediately
-                } else {
-                    String path = layer.getLayerImagePath();
-                    if (path != null && !path.isEmpty()) {
-                        try {
-                            android.graphics.Bitmap overlay = android.graphics.BitmapFactory.decodeFile(path);
-                            if (overlay != null) {
-                                if (overlay.getWidth() != working.getWidth() || overlay.getHeight() != working.getHeight()) {
-                                    // Scale overlay to current working size
-                                    android.graphics.Bitmap scaled = android.graphics.Bitmap.createScaledBitmap(overlay, working.getWidth(), working.getHeight(), true);
-                                    canvas.drawBitmap(scaled, 0, 0, null);
-                                    if (scaled != overlay) scaled.recycle();
-                                    overlay.recycle();
-                                } else {
-                                    canvas.drawBitmap(overlay, 0, 0, null);
-                                    overlay.recycle();
-                                }
-                            }
-                        } catch (Throwable t) {
-                            Log.w(TAG, "Failed to overlay annotation bitmap: " + path, t);
-                        }
-                    }
-                }
+        // Setup page navigation
+        setupPageNavigation();
 
+        // Persist the current view (sheet + page) immediately after first successful render
+        if (currentSheetId != -1) {
+            try {
+                preferencesHelper.saveLastViewedPage(currentSheetId, currentPage);
+                Log.d(TAG, "displayBitmap: Saved last viewed page " + currentPage + " for sheet " + currentSheetId);
             } catch (Exception e) {
-                Log.e(TAG, "Error applying layer: " + layer.getLayerName(), e);
+                Log.w(TAG, "displayBitmap: Failed to save last viewed page", e);
             }
         }
 
-        return working;
+        Log.d(TAG, "Bitmap displayed with layers applied");
     }
 
-    private Bitmap applyCrop(Bitmap bitmap, PageLayerEntity layer) {
-        int left = (int)(layer.getCropLeft() * bitmap.getWidth());
-        int top = (int)(layer.getCropTop() * bitmap.getHeight());
-        int right = (int)(layer.getCropRight() * bitmap.getWidth());
-        int bottom = (int)(layer.getCropBottom() * bitmap.getHeight());
-
-        int width = right - left;
-        int height = bottom - top;
+    /** Drops the pin the displayed page holds (see {@link #displayPage}). */
+    private void releaseDisplayedPage() {
+        BitmapPool.getInstance().unpin(displayedPageBitmap);
+        displayedPageBitmap = null;
+    }
 
-        // Clamp values
-        left = Math.max(0, Math.min(left, bitmap.getWidth() - 1));
-        top = Math.max(0, Math.min(top, bitmap.getHeight() - 1));
-        width = Math.max(1, Math.min(width, bitmap.getWidth() - left));
-        height = Math.max(1, Math.min(height, bitmap.getHeight() - top));
+    /**
+     * The hardware canvas cannot draw bitmaps larger than the GPU texture size; show a scaled copy instead
+     * and let the tile view supply the full-resolution detail.
+     */
+    private Bitmap fitToMaxTexture(Bitmap bitmap) {
+        int max = PageTileView.getMaxTextureSize();
+        int longest = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (longest <= max) return bitmap;
+        float f = (float) max / longest;
+        try {
+            return Bitmap.createScaledBitmap(bitmap, Math.max(1, (int) (bitmap.getWidth() * f)),
+                    Math.max(1, (int) (bitmap.getHeight() * f)), true);
+        } catch (OutOfMemoryError oom) {
+            Log.e(TAG, "Could not downscale oversized page bitmap", oom);
+            return bitmap;
+        }
+    }
 
-        return Bitmap.createBitmap(bitmap, left, top, width, height);
+    /**
+     * Records the active layers on the compositor in order: per-layer rotation before crop (to match the
+     * CropActivity preview), then adjustments, then the layer image or annotation ops. Worker thread.
+     */
+    private void addLayers(PageCompositor compositor, List<PageLayerEntity> layers) {
+        if (layers == null) return;
+        for (PageLayerEntity layer : layers) {
+            if (layer == null || !layer.isActive()) continue;
+            if (layer.hasRotation()) {
+                compositor.rotate(layer.getRotation());
+            }
+            if (layer.hasCrop()) {
+                compositor.crop(layer.getCropLeft(), layer.getCropTop(), layer.getCropRight(), layer.getCropBottom());
+            }
+            if (layer.hasAdjustments()) {
+                compositor.adjust(layer.getBrightness(), layer.getContrast());
+            }
+            // Plain annotation layers are drawn live by the annotation layer view, not into the page
+            if (layer.isAnnotationOverlay()) continue;
+            if (layer.isVectorAnnotation()) {
+                AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+                compositor.annotations(db.annotationDao().getForLayerSync(layer.getId()));
+            } else {
+                compositor.overlay(layer.getLayerImagePath());
+            }
+        }
     }
 
     public void onPageChanged(int newPageNumber) {
@@ -1128,53 +1300,6 @@ public class SheetDetailFragment extends Fragment {
         stopPlayerIfPlaying();
     }
 
-    private Bitmap applyRotation(Bitmap bitmap, float rotation) {
-        Matrix matrix = new Matrix();
-        matrix.postRotate(rotation);
-        return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
-    }
-
-    private Bitmap applyAdjustments(Bitmap bitmap, float brightness, float contrast) {
-        // Backward-compatible wrapper: perform in-place on a copy to preserve old behavior
-        Bitmap copy = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-        applyAdjustmentsInPlace(copy, brightness, contrast);
-        return copy;
-    }
-
-    private void applyAdjustmentsInPlace(Bitmap target, float brightness, float contrast) {
-        if (target == null) return;
-        int width = target.getWidth();
-        int height = target.getHeight();
-        int[] pixels = new int[width * height];
-        target.getPixels(pixels, 0, width, 0, 0, width, height);
-
-        for (int i = 0; i < pixels.length; i++) {
-            int pixel = pixels[i];
-            int a = (pixel >> 24) & 0xff;
-            int r = (pixel >> 16) & 0xff;
-            int g = (pixel >> 8) & 0xff;
-            int b = pixel & 0xff;
-
-            // Apply contrast
-            r = (int)((r - 128) * contrast + 128);
-            g = (int)((g - 128) * contrast + 128);
-            b = (int)((b - 128) * contrast + 128);
-
-            // Apply brightness
-            r += brightness;
-            g += brightness;
-            b += brightness;
-
-            // Clamp values
-            r = Math.max(0, Math.min(255, r));
-            g = Math.max(0, Math.min(255, g));
-            b = Math.max(0, Math.min(255, b));
-
-            pixels[i] = (a << 24) | (r << 16) | (g << 8) | b;
-        }
-
-        target.setPixels(pixels, 0, width, 0, 0, width, height);
-    }
     public void setCurrentPage(int pageNumber) {
         // logical page index requested by UI
         this.currentPage = pageNumber;
@@ -1190,54 +1315,121 @@ public class SheetDetailFragment extends Fragment {
         // map logical index to original PDF page index considering reorders/deletions
         final int originalIndex = mapLogicalToOriginal(pageNumber);
 
-        new Thread(() -> {
+        // Any prefetch or render for the previous position is now stale
+        cancelPrefetch();
+        final int generation = scheduler().nextGeneration();
+
+        scheduler().submitVisible(generation, () -> {
             try {
-                Bitmap baseBitmap;
-                try {
-                    float scale = (!androidRendererOnly && renderer != null) ? getPdfBoxRenderScale() : getAndroidRenderScale();
-                    if (!androidRendererOnly && renderer != null) {
-                        synchronized (renderLock) {
-                            baseBitmap = renderer.renderImage(originalIndex, scale);
-                        }
-                    } else {
-                        baseBitmap = currentPdfFile != null ? renderWithAndroidPdfRenderer(currentPdfFile, originalIndex, scale) : null;
+                // Fast path: a page shown earlier is served straight from the page cache
+                BaseRaster base = null;
+                if (!showCachedPage(sheetId, originalIndex, generation)) {
+                    base = renderBaseRaster(sheetId, originalIndex);
+                    if (base == null) {
+                        postIfCurrent(generation, () -> showErrorImage("Error rendering page"));
+                        return;
                     }
-                } catch (OutOfMemoryError oom) {
-                    Log.e(TAG, "PdfBox render OOM on page change, switching to Android PdfRenderer", oom);
-                    if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                    float scale = getAndroidRenderScale();
-                    baseBitmap = currentPdfFile != null ? renderWithAndroidPdfRenderer(currentPdfFile, originalIndex, scale) : null;
-                } catch (Throwable t) {
-                    Log.e(TAG, "PdfBox render failed on page change, using Android PdfRenderer", t);
-                    if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                    float scale = getAndroidRenderScale();
-                    baseBitmap = currentPdfFile != null ? renderWithAndroidPdfRenderer(currentPdfFile, originalIndex, scale) : null;
-                }
-
-                if (baseBitmap == null) {
-                    runOnUiThread(() -> showErrorImage("Error rendering page"));
-                    return;
                 }
+                if (!scheduler().isCurrent(generation)) return;
 
                 // Apply layers and display on UI using original page index
-                loadAndApplyLayers(sheetId, originalIndex, baseBitmap);
+                loadAndApplyLayers(sheetId, originalIndex, base, generation);
 
                 // Update page indicator and save page using logical index
-                runOnUiThread(() -> {
+                postIfCurrent(generation, () -> {
                     int t = getTotalPageCount();
                     if (t > 0) {
                         updatePageIndicator(pageNumber + 1, t);
                     }
                     onPageChanged(pageNumber);
                 });
+
+                // Prepare the pages a forward/backward tap will need next
+                schedulePrefetch(pageNumber);
             } catch (Exception e) {
                 Log.e(TAG, "Error rendering page change", e);
-                runOnUiThread(() -> showErrorImage("Error rendering page"));
+                postIfCurrent(generation, () -> showErrorImage("Error rendering page"));
             }
-        }).start();
+        });
     }
 
 
+    /**
+     * Renders and composites the next and previous logical pages into the page cache at background
+     * priority, so that sequential page turns are served from memory.
+     */
+    private void schedulePrefetch(int logicalPage) {
+        // A newer page request superseded this one; it schedules its own prefetch
+        if (logicalPage != currentPage) return;
+        final long sheet = sheetId;
+        final int generation = prefetchGeneration.incrementAndGet();
+        final int[] neighbours = new int[] { logicalPage + 1, logicalPage - 1 };
+        RenderScheduler scheduler = scheduler();
+        scheduler.cancel(RenderScheduler.Priority.PREFETCH);
+        scheduler.submit(RenderScheduler.Priority.PREFETCH, () -> {
+            for (int logical : neighbours) {
+                if (prefetchGeneration.get() != generation || scheduler.isShutdown()) return;
+                int total = getTotalPageCount();
+                if (logical < 0 || logical >= total) continue;
+                prefetchPage(sheet, mapLogicalToOriginal(logical), generation);
+            }
+        });
+    }
+
+    private void prefetchPage(long sheet, int originalIndex, int generation) {
+        try {
+            Context ctx = getContext();
+            if (ctx == null) return;
+            AppDatabase db = AppDatabase.getDatabase(ctx.getApplicationContext());
+            PageSettingsEntity settings = db.pageSettingsDao().getByPage(sheet, originalIndex);
+            List<PageLayerEntity> layers = db.pageLayerDao().getActiveLayersForPageSync(sheet, originalIndex);
+            // Re-check right before the expensive render; the user may have jumped elsewhere meanwhile
+            if (prefetchGeneration.get() != generation) return;
+            BaseRaster holder = new BaseRaster(null, 0L);
+            Bitmap composite = obtainPageComposite(sheet, originalIndex, settings, layers, holder);
+            // Only the composite is kept (by the page cache)
+            BitmapPool.getInstance().unpin(composite);
+            releaseBaseHolder(holder);
+        } catch (Throwable t) {
+            Log.w(TAG, "Prefetch failed for page " + originalIndex, t);
+        }
+    }
+
+    /**
+     * Times both backends on the first pages at prefetch priority and remembers the winner for this sheet.
+     * Like the neighbour prefetch it is dropped when the user turns the page first; the next open tries again.
+     */
+    private void scheduleRendererTrial(SheetEntity sheet, PdfDocumentHandle handle) {
+        scheduler().submit(RenderScheduler.Priority.PREFETCH, () -> {
+            if (pdfHandle != handle) return;
+            RendererSelector.Backend choice = handle.runTrial(getRenderScale(0));
+            // A handle closed mid-trial fails its renders; that says nothing about the backends
+            if (pdfHandle == handle) recordPreferredRenderer(sheet, choice);
+        });
+    }
+
+    private void cancelPrefetch() {
+        prefetchGeneration.incrementAndGet();
+        RenderScheduler scheduler = renderScheduler;
+        if (scheduler != null) scheduler.cancel(RenderScheduler.Priority.PREFETCH);
+    }
+
+    private synchronized RenderScheduler scheduler() {
+        if (renderScheduler == null || renderScheduler.isShutdown()) {
+            // Two workers match the renderer pool of PdfRendererSession: visible page, and prefetch/export
+            renderScheduler = new RenderScheduler("page-render", 2);
+        }
+        return renderScheduler;
+    }
+
+    /** Runs the action on the UI thread unless a newer page request superseded the generation. */
+    private void postIfCurrent(int generation, Runnable action) {
+        runOnUiThread(() -> {
+            RenderScheduler scheduler = renderScheduler;
+            if (scheduler != null && scheduler.isCurrent(generation)) action.run();
+        });
+    }
+
     private void toggleUiChrome() {
         try {
             // Toggle top floating toolbars in activity
@@ -1961,10 +2153,13 @@ public class SheetDetailFragment extends Fragment {
         paint.setTextAlign(Paint.Align.CENTER);
 
         canvas.drawText(message, 400, 300, paint);
+        releaseDisplayedPage();
+        if (pageTileView != null) pageTileView.clear();
+        if (annotationLayerView != null) annotationLayerView.clear();
         photoView.setImageBitmap(errorBitmap);
     }
 
-    // Add cleanup in onDestroy and onDestroyView to ensure PDDocument is closed
+    // Add cleanup in onDestroy and onDestroyView to ensure the document is closed
     @Override
     public void onDestroyView() {
         super.onDestroyView();
@@ -1988,25 +2183,27 @@ public class SheetDetailFragment extends Fragment {
         }
         // Ensure Piano dialog is dismissed to mirror player behavior
         try { dismissPianoDialog(); } catch (Throwable ignore) {}
-        synchronized (renderLock) {
-            if (document != null) {
-                try { document.close(); } catch (IOException e) { Log.e(TAG, "Error closing document in onDestroyView", e); }
+        // Stop background rendering before the document goes away
+        cancelPrefetch();
+        if (photoView != null) photoView.removeCallbacks(viewportRefresh);
+        viewportWidth = 0;
+        viewportHeight = 0;
+        releaseBaseHolder(activeBaseHolder);
+        activeBaseHolder = null;
+        releaseDisplayedPage();
+        synchronized (this) {
+            if (renderScheduler != null) {
+                renderScheduler.shutdown();
+                renderScheduler = null;
             }
-            document = null;
-            renderer = null;
         }
+        setPdfHandle(null);
     }
 
     @Override
     public void onDestroy() {
         super.onDestroy();
-        synchronized (renderLock) {
-            if (document != null) {
-                try { document.close(); } catch (IOException e) { Log.e(TAG, "Error closing document", e); }
-            }
-            document = null;
-            renderer = null;
-        }
+        setPdfHandle(null);
     }
 
     private boolean attemptedAutoRefresh = false;
@@ -2044,19 +2241,37 @@ public class SheetDetailFragment extends Fragment {
         }
     }
 
-    private boolean shouldUsePdfBox(File pdfFile) {
-        // Skip PDFBox if device is under memory pressure or the file is large
-        if (pdfFile != null) {
-            long fileSize = pdfFile.length();
-            // If PDF is larger than 25MB, avoid PDFBox to prevent OOM on constrained devices
-            if (fileSize > 25L * 1024L * 1024L) {
-                return false;
+    private void recordPreferredRenderer(SheetEntity sheet, RendererSelector.Backend backend) {
+        if (sheet == null || backend == null || backend.name().equals(sheet.getPreferredRenderer())) return;
+        sheet.setPreferredRenderer(backend.name());
+        Context ctx = getContext();
+        if (ctx == null) return;
+        AppDatabase db = AppDatabase.getDatabase(ctx.getApplicationContext());
+        final long id = sheet.getId();
+        AppDatabase.databaseWriteExecutor.execute(() -> {
+            try {
+                db.sheetDao().updatePreferredRenderer(id, backend.name());
+            } catch (Throwable t) {
+                Log.w(TAG, "Failed to store renderer choice", t);
             }
-        }
-        return !isLowMemory();
+        });
     }
 
+    /**
+     * Memory pressure check; the result is reused for {@link #LOW_MEMORY_CHECK_INTERVAL_MS} because
+     * ActivityManager.getMemoryInfo is a binder call and this is consulted on every sheet open and export.
+     */
     private boolean isLowMemory() {
+        long now = android.os.SystemClock.uptimeMillis();
+        if (lowMemoryCheckedAt != 0 && now - lowMemoryCheckedAt < LOW_MEMORY_CHECK_INTERVAL_MS) {
+            return lowMemory;
+        }
+        lowMemory = checkLowMemory();
+        lowMemoryCheckedAt = now;
+        return lowMemory;
+    }
+
+    private boolean checkLowMemory() {
         try {
             ActivityManager am = (ActivityManager) requireContext().getSystemService(Context.ACTIVITY_SERVICE);
             ActivityManager.MemoryInfo mi = new ActivityManager.MemoryInfo();
@@ -2074,77 +2289,155 @@ public class SheetDetailFragment extends Fragment {
         }
     }
 
-    private float getAndroidRenderScale() {
-        // Use a smaller scale when low on memory to reduce bitmap size
-        return isLowMemory() ? 1.2f : 1.5f;
+    /**
+     * Render scale (pixels per PDF point) at which the page exactly fits the photo view. Before the first
+     * layout the screen size is used. Reduced if memory was low when the view was created, and capped at the
+     * GPU texture size.
+     * Both renderers use the same scale, so cache keys do not depend on which one produced a page.
+     */
+    private float getRenderScale(int originalIndex) {
+        float[] size = getPagePointSize(originalIndex);
+        if (size == null || size[0] <= 0f || size[1] <= 0f) {
+            return FALLBACK_RENDER_SCALE;
+        }
+        return fitScale(size[0], size[1]);
     }
 
-    private float getPdfBoxRenderScale() {
-        // Slightly reduced scale for PDFBox to lower memory pressure
+    /** Scale at which content of the given size in PDF points fits the photo view, with the same caps as {@link #getRenderScale}. */
+    private float fitScale(float contentWidth, float contentHeight) {
+        int width = viewportWidth;
+        int height = viewportHeight;
+        if (width <= 0 || height <= 0) {
+            android.util.DisplayMetrics dm = android.content.res.Resources.getSystem().getDisplayMetrics();
+            width = dm.widthPixels;
+            height = dm.heightPixels;
+        }
+        float scale = Math.min(width / contentWidth, height / contentHeight) * renderScaleFactor;
+        scale = Math.min(scale, PageTileView.getMaxTextureSize() / Math.max(contentWidth, contentHeight));
+        // Same precision as the cache keys (see getCompositeScale)
+        return Math.max(MIN_RENDER_SCALE, Math.round(scale * 1000f) / 1000f);
+    }
+
+    /**
+     * Scale of the page's composite as {@link #renderBasePage} rasterizes it: the fit of the settings crop and
+     * rotation, or of the whole page when it cannot be opened. Cache keys use this scale rather than
+     * {@link #getRenderScale}, because a cropped region can fit two viewports differently while the whole
+     * page fits both the same; equal keys then always mean equal bitmap sizes.
+     */
+    private float getCompositeScale(int originalIndex, PageSettingsEntity settings) {
+        Matrix transform = pageTransform(originalIndex, settings, 1f, new int[2]);
+        // Rotation keeps lengths, so a unit radius maps to the uniform scale
+        return transform != null ? transform.mapRadius(1f) : getRenderScale(originalIndex);
+    }
+
+    /** Scale for exports, which should not depend on the window size. */
+    private float getExportRenderScale() {
         return isLowMemory() ? 1.3f : 1.6f;
     }
 
+    /** Page size in PDF points with the page rotation applied, or null if the page cannot be opened. */
+    private float[] getPagePointSize(int originalIndex) {
+        PdfDocumentHandle handle = pdfHandle;
+        return handle != null ? handle.getPageSize(originalIndex) : null;
+    }
+
+    /**
+     * Renders the cropped, rotated region of an original PDF page with the sheet's backend, so that the crop
+     * fills the photo view at full resolution instead of being cut out of a whole-page render. The document
+     * handle falls back to Android PdfRenderer on failure or OOM.
+     * @return the base raster or null if both renderers failed
+     */
+    private Bitmap renderBasePage(int originalIndex, PageSettingsEntity settings) {
+        PdfDocumentHandle handle = pdfHandle;
+        if (handle == null) return null;
+        int[] size = new int[2];
+        Matrix transform = pageTransform(originalIndex, settings, 1f, size);
+        if (transform == null) {
+            return handle.render(originalIndex, getRenderScale(originalIndex));
+        }
+        return handle.renderRegion(originalIndex, transform, size[0], size[1]);
+    }
+
+    /** Loads the page settings and renders the base raster for them. Blocking; call from a worker thread. */
+    private BaseRaster renderBaseRaster(long sheetId, int originalIndex) {
+        PageSettingsEntity settings = null;
+        try {
+            AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+            settings = db.pageSettingsDao().getByPage(sheetId, originalIndex);
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to load page settings", t);
+        }
+        Bitmap bitmap = renderBasePage(originalIndex, settings);
+        return bitmap != null ? new BaseRaster(bitmap, geometryKey(settings)) : null;
+    }
+
+    /**
+     * Page-to-bitmap transform that rasterizes only the region left by the settings crop and rotation, scaled
+     * to fit the photo view (times {@code fraction}). Same geometry as {@link #buildTileSource}: rotation, crop
+     * within the rotated bounds, then scale. The bitmap size is written to {@code outSize}.
+     * @return null if the page cannot be opened
+     */
+    private Matrix pageTransform(int originalIndex, PageSettingsEntity settings, float fraction, int[] outSize) {
+        float[] pageSize = getPagePointSize(originalIndex);
+        if (pageSize == null || pageSize[0] <= 0f || pageSize[1] <= 0f) return null;
+        Matrix transform = new Matrix();
+        float cropLeft = 0f, cropTop = 0f, cropRight = 1f, cropBottom = 1f;
+        if (settings != null) {
+            transform.postRotate(settings.getRotation());
+            cropLeft = Math.max(0f, Math.min(1f, settings.getCropLeft()));
+            cropTop = Math.max(0f, Math.min(1f, settings.getCropTop()));
+            cropRight = Math.max(cropLeft, Math.min(1f, settings.getCropRight()));
+            cropBottom = Math.max(cropTop, Math.min(1f, settings.getCropBottom()));
+        }
+        RectF bounds = new RectF(0, 0, pageSize[0], pageSize[1]);
+        transform.mapRect(bounds);
+        transform.postTranslate(-bounds.left - cropLeft * bounds.width(), -bounds.top - cropTop * bounds.height());
+        float regionWidth = Math.max(1f, (cropRight - cropLeft) * bounds.width());
+        float regionHeight = Math.max(1f, (cropBottom - cropTop) * bounds.height());
+        float scale = fitScale(regionWidth, regionHeight) * fraction;
+        transform.postScale(scale, scale);
+        outSize[0] = Math.max(1, Math.round(regionWidth * scale));
+        outSize[1] = Math.max(1, Math.round(regionHeight * scale));
+        return transform;
+    }
+
+    /** Identifies the crop and rotation a base raster was rendered with; adjustments and layers don't affect it. */
+    private static long geometryKey(PageSettingsEntity settings) {
+        if (settings == null) return 0L;
+        if (settings.getRotation() == 0f && settings.getCropLeft() == 0f && settings.getCropTop() == 0f
+                && settings.getCropRight() == 1f && settings.getCropBottom() == 1f) {
+            return 0L; // same raster as without settings
+        }
+        return java.util.Arrays.hashCode(new float[] { settings.getRotation(), settings.getCropLeft(),
+                settings.getCropTop(), settings.getCropRight(), settings.getCropBottom() });
+    }
+
+    /** Base raster of a page together with the settings geometry it was rendered with. */
+    private static final class BaseRaster {
+        Bitmap bitmap;
+        long geometry;
+
+        BaseRaster(Bitmap bitmap, long geometry) {
+            this.bitmap = bitmap;
+            this.geometry = geometry;
+        }
+    }
+
     private void loadPreviousOpsIntoOverlay() {
         com.example.staffpad.views.AnnotationOverlayView overlay = annotationOverlay;
         if (overlay == null) return;
+        final RectF pageRect = annotationPageRect(overlay);
         new Thread(() -> {
             try {
                 AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
                 PageLayerEntity layer = db.pageLayerDao().getActiveAnnotationLayer(currentSheetId, currentPage);
-                if (layer == null || layer.getLayerImagePath() == null) return;
-                File jsonFile = new File(layer.getLayerImagePath().replace(".png", ".json"));
-                if (!jsonFile.exists()) return;
-                String content = new String(java.nio.file.Files.readAllBytes(jsonFile.toPath()));
-                org.json.JSONObject root = new org.json.JSONObject(content);
-                org.json.JSONArray arr = root.optJSONArray("ops");
-                if (arr == null) return;
-                java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> list = new java.util.ArrayList<>();
-                for (int i=0;i<arr.length();i++) {
-                    org.json.JSONObject obj = arr.getJSONObject(i);
-                    String type = obj.optString("type","unknown");
-                    if ("stroke".equals(type)) {
-                        int color = obj.optInt("color", Color.BLACK);
-                        int alpha = obj.optInt("alpha", 255);
-                        float width = (float)obj.optDouble("width", 6.0);
-                        com.example.staffpad.views.AnnotationOverlayView.Stroke s = new com.example.staffpad.views.AnnotationOverlayView.Stroke(color, width, alpha);
-                        org.json.JSONArray pts = obj.optJSONArray("points");
-                        if (pts != null && pts.length() > 0) {
-                            for (int p=0;p<pts.length();p++) {
-                                org.json.JSONArray pp = pts.getJSONArray(p);
-                                float px = (float) pp.getDouble(0);
-                                float py = (float) pp.getDouble(1);
-                                s.addPoint(px, py, p==0);
-                            }
-                        }
-                        list.add(s);
-                    } else if ("erase".equals(type)) {
-                        float width = (float)obj.optDouble("width", 20.0);
-                        com.example.staffpad.views.AnnotationOverlayView.EraseStroke es = new com.example.staffpad.views.AnnotationOverlayView.EraseStroke(width);
-                        org.json.JSONArray pts = obj.optJSONArray("points");
-                        if (pts != null && pts.length() > 0) {
-                            for (int p=0;p<pts.length();p++) {
-                                org.json.JSONArray pp = pts.getJSONArray(p);
-                                float px = (float) pp.getDouble(0);
-                                float py = (float) pp.getDouble(1);
-                                es.addPoint(px, py, p==0);
-                            }
-                        }
-                        list.add(es);
-                    } else if ("text".equals(type)) {
-                        String text = obj.optString("text", "");
-                        float x = (float)obj.optDouble("x", 0.0);
-                        float y = (float)obj.optDouble("y", 0.0);
-                        float sizePx = (float)obj.optDouble("size", 16.0);
-                        int color = obj.optInt("color", Color.BLACK);
-                        boolean bold = obj.optBoolean("bold", false);
-                        com.example.staffpad.views.AnnotationOverlayView.TextBox t = new com.example.staffpad.views.AnnotationOverlayView.TextBox(x, y, color, 16f, bold);
-                        t.text = text;
-                        t.paint.setColor(color);
-                        t.paint.setTextSize(sizePx);
-                        t.paint.setFakeBoldText(bold);
-                        t.textSizeSp = sizePx / getResources().getDisplayMetrics().scaledDensity;
-                        list.add(t);
-                    }
+                if (layer == null) return;
+                java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> list;
+                if (layer.isVectorAnnotation()) {
+                    list = toOverlayItems(db.annotationDao().getForLayerSync(layer.getId()), pageRect);
+                } else {
+                    list = readLegacySidecar(layer.getLayerImagePath());
+                    if (list == null) return;
                 }
                 runOnUiThread(() -> overlay.setItemsFromHistory(list));
             } catch (Throwable t) {
@@ -2153,91 +2446,143 @@ public class SheetDetailFragment extends Fragment {
         }).start();
     }
 
-    private void switchToAndroidRendererOnly(File pdfFile) {
-        // Close and null PDFBox resources, set androidRendererOnly, and cache page count
-        try {
-            if (document != null) {
-                document.close();
-            }
-        } catch (IOException e) {
-            Log.e(TAG, "Error closing PDDocument during switchToAndroidRendererOnly", e);
-        } finally {
-            document = null;
-            renderer = null;
-        }
-        androidRendererOnly = true;
-        // Cache page count via Android PdfRenderer if not already known
-        if (altPageCount <= 0 && pdfFile != null && pdfFile.exists()) {
-            ParcelFileDescriptor fd = null;
-            PdfRenderer pr = null;
-            try {
-                fd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
-                pr = new PdfRenderer(fd);
-                altPageCount = pr.getPageCount();
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to cache page count in switchToAndroidRendererOnly", e);
-            } finally {
-                try { if (pr != null) pr.close(); } catch (Throwable ignored) {}
-                try { if (fd != null) fd.close(); } catch (Throwable ignored) {}
+    /**
+     * Reads the last ops of an annotation layer saved as PNG from its JSON sidecar (view coordinates).
+     * Returns null if there is no sidecar.
+     */
+    private java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> readLegacySidecar(String imagePath)
+            throws java.io.IOException, org.json.JSONException {
+        File jsonFile = new File(imagePath.replace(".png", ".json"));
+        if (!jsonFile.exists()) return null;
+        String content = new String(java.nio.file.Files.readAllBytes(jsonFile.toPath()));
+        org.json.JSONObject root = new org.json.JSONObject(content);
+        org.json.JSONArray arr = root.optJSONArray("ops");
+        if (arr == null) return null;
+        java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> list = new java.util.ArrayList<>();
+        for (int i=0;i<arr.length();i++) {
+            org.json.JSONObject obj = arr.getJSONObject(i);
+            String type = obj.optString("type","unknown");
+            if ("stroke".equals(type)) {
+                int color = obj.optInt("color", Color.BLACK);
+                int alpha = obj.optInt("alpha", 255);
+                float width = (float)obj.optDouble("width", 6.0);
+                com.example.staffpad.views.AnnotationOverlayView.Stroke s = new com.example.staffpad.views.AnnotationOverlayView.Stroke(color, width, alpha);
+                org.json.JSONArray pts = obj.optJSONArray("points");
+                if (pts != null && pts.length() > 0) {
+                    for (int p=0;p<pts.length();p++) {
+                        org.json.JSONArray pp = pts.getJSONArray(p);
+                        float px = (float) pp.getDouble(0);
+                        float py = (float) pp.getDouble(1);
+                        s.addPoint(px, py, p==0);
+                    }
+                }
+                list.add(s);
+            } else if ("erase".equals(type)) {
+                float width = (float)obj.optDouble("width", 20.0);
+                com.example.staffpad.views.AnnotationOverlayView.EraseStroke es = new com.example.staffpad.views.AnnotationOverlayView.EraseStroke(width);
+                org.json.JSONArray pts = obj.optJSONArray("points");
+                if (pts != null && pts.length() > 0) {
+                    for (int p=0;p<pts.length();p++) {
+                        org.json.JSONArray pp = pts.getJSONArray(p);
+                        float px = (float) pp.getDouble(0);
+                        float py = (float) pp.getDouble(1);
+                        es.addPoint(px, py, p==0);
+                    }
+                }
+                list.add(es);
+            } else if ("text".equals(type)) {
+                String text = obj.optString("text", "");
+                float x = (float)obj.optDouble("x", 0.0);
+                float y = (float)obj.optDouble("y", 0.0);
+                float sizePx = (float)obj.optDouble("size", 16.0);
+                int color = obj.optInt("color", Color.BLACK);
+                boolean bold = obj.optBoolean("bold", false);
+                com.example.staffpad.views.AnnotationOverlayView.TextBox t = new com.example.staffpad.views.AnnotationOverlayView.TextBox(x, y, color, 16f, bold);
+                t.text = text;
+                t.paint.setColor(color);
+                t.paint.setTextSize(sizePx);
+                t.paint.setFakeBoldText(bold);
+                t.textSizeSp = sizePx / getResources().getDisplayMetrics().scaledDensity;
+                list.add(t);
             }
         }
+        return list;
     }
 
-    private Bitmap renderWithAndroidPdfRenderer(File file, int pageIndex, float scale) {
-        ParcelFileDescriptor fd = null;
-        PdfRenderer pdfRenderer = null;
-        PdfRenderer.Page page = null;
-        try {
-            fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
-            pdfRenderer = new PdfRenderer(fd);
-            if (pageIndex < 0 || pageIndex >= pdfRenderer.getPageCount()) {
-                pageIndex = 0;
-            }
-            page = pdfRenderer.openPage(pageIndex);
-            int width = Math.max(1, (int) (page.getWidth() * scale));
-            int height = Math.max(1, (int) (page.getHeight() * scale));
-            Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
-            return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Android PdfRenderer failed", e);
-            return null;
-        } finally {
-            try { if (page != null) page.close(); } catch (Throwable ignored) {}
-            try { if (pdfRenderer != null) pdfRenderer.close(); } catch (Throwable ignored) {}
-            try { if (fd != null) fd.close(); } catch (Throwable ignored) {}
+    /** Replaces the open document, closing the previous one. */
+    private void setPdfHandle(PdfDocumentHandle next) {
+        PdfDocumentHandle previous;
+        synchronized (handleLock) {
+            previous = pdfHandle;
+            pdfHandle = next;
+        }
+        if (previous != null && previous != next) {
+            previous.close();
         }
     }
 
     private int getTotalPageCount() {
-        try {
-            int base;
-            if (document != null) base = document.getNumberOfPages();
-            else if (altPageCount > 0) base = altPageCount;
-            else base = 0;
-            if (pageMap != null) return pageMap.size();
-            return base;
-        } catch (Throwable ignored) {}
-        return 0;
-    }
-
-    private int getTotalPageCountInternal(File pdfFile) {
-        int total = getTotalPageCount();
-        if (total > 0) return total;
-        // As a last resort, try to determine via Android PdfRenderer and cache
-        ParcelFileDescriptor fd = null;
-        PdfRenderer pr = null;
-        try {
-            fd = ParcelFileDescriptor.open(pdfFile, ParcelFileDescriptor.MODE_READ_ONLY);
-            pr = new PdfRenderer(fd);
-            altPageCount = pr.getPageCount();
-        } catch (Exception e) {
-            Log.e(TAG, "Could not determine page count via Android PdfRenderer", e);
-        } finally {
-            try { if (pr != null) pr.close(); } catch (Throwable ignored) {}
-            try { if (fd != null) fd.close(); } catch (Throwable ignored) {}
+        PdfDocumentHandle handle = pdfHandle;
+        return handle != null ? handle.getLogicalPageCount() : 0;
+    }
+
+    /** Stage of a page's display pipeline that {@link #invalidatePage} recomputes. */
+    public enum PageAspect {
+        /** The PDF raster: drop the cached composites and base raster, then render and compose again. */
+        BASE,
+        /** Page settings: compose again; the base is re-rendered only if the crop or rotation changed. */
+        SETTINGS,
+        /** Annotation overlays: reload the annotation layer view; the page bitmap is not touched. */
+        OVERLAY
+    }
+
+    /**
+     * Marks one stage of a page dirty and recomputes only that stage for the displayed page, without
+     * reloading the document or recreating the fragment. Other pages pick the change up when they are shown.
+     * Call on the main thread.
+     */
+    public void invalidatePage(long sheet, int logicalPage, PageAspect aspect) {
+        if (sheet != sheetId || pdfHandle == null) return;
+        final int original = mapLogicalToOriginal(logicalPage);
+        final boolean current = logicalPage == currentPage;
+        switch (aspect) {
+            case BASE:
+                PageBitmapCache.getInstance().removePage(sheet, original);
+                File pdfFile = currentPdfFile;
+                if (pdfFile != null) {
+                    // Otherwise the next lookup would promote the stale page from disk again
+                    DiskPageCache.getInstance(requireContext()).removePage(pdfFile, original);
+                }
+                if (current) {
+                    // The observers keep the holder; the next composite renders a fresh base into it
+                    releaseBaseHolder(activeBaseHolder);
+                    if (pageTileView != null) pageTileView.clear();
+                }
+                // fall through: the page has to be composed again
+            case SETTINGS:
+                if (current && pageStateLiveData != null) pageStateLiveData.invalidate();
+                break;
+            case OVERLAY:
+                Bitmap shown = displayedPageBitmap;
+                final int width = shown != null ? shown.getWidth() : 0;
+                final int height = shown != null ? shown.getHeight() : 0;
+                final int generation = scheduler().currentGeneration();
+                scheduler().submitVisible(generation, () -> {
+                    try {
+                        AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+                        List<PageLayerEntity> layers = db.pageLayerDao().getActiveLayersForPageSync(sheet, original);
+                        for (PageLayerEntity layer : layers) {
+                            if (!layer.isAnnotationOverlay()) continue;
+                            OverlayBitmapCache.getInstance().invalidate(layer.isVectorAnnotation()
+                                    ? annotationOverlayName(layer) : layer.getLayerImagePath());
+                        }
+                        if (current && width > 0 && height > 0) postAnnotations(generation, layers, width, height);
+                    } catch (Throwable t) {
+                        Log.w(TAG, "Failed to reload annotation layers", t);
+                    }
+                });
+                break;
         }
-        return getTotalPageCount();
     }
 
     public void refreshPage() {
@@ -2247,47 +2592,31 @@ public class SheetDetailFragment extends Fragment {
             return;
         }
         final int logical = currentPage;
-        new Thread(() -> {
+        final int generation = scheduler().nextGeneration();
+        scheduler().submitVisible(generation, () -> {
             try {
                 int original = mapLogicalToOriginal(logical);
-                Bitmap baseBitmap;
-                try {
-                    float scale = (!androidRendererOnly && renderer != null) ? getPdfBoxRenderScale() : getAndroidRenderScale();
-                    if (!androidRendererOnly && renderer != null) {
-                        synchronized (renderLock) {
-                            baseBitmap = renderer.renderImage(original, scale);
-                        }
-                    } else {
-                        baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, scale);
+                BaseRaster base = null;
+                if (!showCachedPage(sheetId, original, generation)) {
+                    base = renderBaseRaster(sheetId, original);
+                    if (base == null) {
+                        postIfCurrent(generation, () -> showErrorImage("Error rendering page"));
+                        return;
                     }
-                } catch (OutOfMemoryError oom) {
-                    Log.e(TAG, "PdfBox render OOM in refreshPage, switching to Android PdfRenderer", oom);
-                    if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                    float scale = getAndroidRenderScale();
-                    baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, scale);
-                } catch (Throwable t) {
-                    Log.e(TAG, "PdfBox render failed in refreshPage, using Android PdfRenderer", t);
-                    if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                    float scale = getAndroidRenderScale();
-                    baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, scale);
                 }
+                if (!scheduler().isCurrent(generation)) return;
 
-                if (baseBitmap == null) {
-                    runOnUiThread(() -> showErrorImage("Error rendering page"));
-                    return;
-                }
-
-                loadAndApplyLayers(sheetId, original, baseBitmap);
+                loadAndApplyLayers(sheetId, original, base, generation);
 
-                runOnUiThread(() -> {
+                postIfCurrent(generation, () -> {
                     int t = getTotalPageCount();
                     if (t > 0) updatePageIndicator(logical + 1, t);
                 });
             } catch (Exception e) {
                 Log.e(TAG, "Error refreshing page", e);
-                runOnUiThread(() -> showErrorImage("Error rendering page"));
+                postIfCurrent(generation, () -> showErrorImage("Error rendering page"));
             }
-        }).start();
+        });
     }//
 
     // Piano dialog controls (managed here to behave like the player bottom dialog)
@@ -2443,8 +2772,60 @@ public class SheetDetailFragment extends Fragment {
 
     public enum ShareVariant { ORIGINAL, CROPPED, CROPPED_ANNOTATED }
 
+    /**
+     * Renders an original page at export scale and composes it for the share variant in one
+     * {@link PageCompositor} pass: page settings and the latest crop layer unless ORIGINAL, plus the
+     * annotation layer for CROPPED_ANNOTATED. Blocking; returns null if the page cannot be rendered.
+     */
+    private Bitmap composeExportPage(int original, ShareVariant variant) {
+        // The document handle falls back to Android PdfRenderer on failure or OOM
+        PdfDocumentHandle handle = pdfHandle;
+        Bitmap base = handle != null ? handle.render(original, getExportRenderScale()) : null;
+        if (base == null) return null;
+        PageCompositor compositor = new PageCompositor(base);
+        AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
+        if (variant != ShareVariant.ORIGINAL) {
+            try {
+                PageSettingsEntity settings = db.pageSettingsDao().getByPage(currentSheetId, original);
+                if (settings != null) {
+                    compositor.rotate(settings.getRotation());
+                    compositor.crop(settings.getCropLeft(), settings.getCropTop(), settings.getCropRight(), settings.getCropBottom());
+                    compositor.adjust(settings.getBrightness(), settings.getContrast());
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "composeExportPage: failed to apply page settings", t);
+            }
+            try {
+                PageLayerEntity cropLayer = db.pageLayerDao().getLatestCropLayerForPage(currentSheetId, original);
+                if (cropLayer != null && cropLayer.hasCrop()) {
+                    compositor.crop(cropLayer.getCropLeft(), cropLayer.getCropTop(), cropLayer.getCropRight(), cropLayer.getCropBottom());
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "composeExportPage: failed to apply crop layer", t);
+            }
+        }
+        if (variant == ShareVariant.CROPPED_ANNOTATED) {
+            try {
+                PageLayerEntity ann = db.pageLayerDao().getActiveAnnotationLayer(currentSheetId, original);
+                if (ann != null && ann.isVectorAnnotation()) {
+                    // Drawn at export resolution rather than scaled from a screen-sized image
+                    compositor.annotations(db.annotationDao().getForLayerSync(ann.getId()));
+                } else if (ann != null) {
+                    compositor.overlay(ann.getLayerImagePath());
+                }
+            } catch (Throwable t) {
+                Log.w(TAG, "composeExportPage: failed to overlay annotation", t);
+            }
+        }
+        try {
+            return compositor.draw();
+        } finally {
+            BitmapPool.getInstance().release(base);
+        }
+    }
+
     public void exportCurrentPageBitmap(final ShareVariant variant, final java.util.function.Consumer<android.graphics.Bitmap> callback) {
-        new Thread(() -> {
+        scheduler().submit(RenderScheduler.Priority.EXPORT, () -> {
             try {
                 if (currentPdfFile == null) {
                     runOnUiThread(() -> callback.accept(null));
@@ -2452,101 +2833,17 @@ public class SheetDetailFragment extends Fragment {
                 }
                 int logical = currentPage;
                 int original = mapLogicalToOriginal(logical);
-                float scale = (!androidRendererOnly && renderer != null) ? getPdfBoxRenderScale() : getAndroidRenderScale();
-                android.graphics.Bitmap baseBitmap;
-                try {
-                    synchronized (renderLock) {
-                        baseBitmap = renderer != null ? renderer.renderImage(original, scale) : null;
-                    }
-                } catch (OutOfMemoryError oom) {
-                    Log.e(TAG, "exportCurrentPageBitmap: PdfBox render OOM; using Android PdfRenderer", oom);
-                    if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                    baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, getAndroidRenderScale());
-                } catch (Throwable t) {
-                    Log.e(TAG, "exportCurrentPageBitmap: PdfBox render failed; using Android PdfRenderer", t);
-                    if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                    baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, getAndroidRenderScale());
-                }
-
-                if (baseBitmap == null) {
-                    runOnUiThread(() -> callback.accept(null));
-                    return;
-                }
-
-                android.graphics.Bitmap working = baseBitmap;
-
-                if (variant != ShareVariant.ORIGINAL) {
-                    AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
-                    try {
-                        PageSettingsEntity settings = db.pageSettingsDao().getByPage(currentSheetId, original);
-                        if (settings != null) {
-                            if (settings.getRotation() != 0f) {
-                                working = applyRotation(working, settings.getRotation());
-                            }
-                            if (!(Math.abs(settings.getCropLeft()) < 1e-3 && Math.abs(settings.getCropTop()) < 1e-3 && Math.abs(settings.getCropRight() - 1f) < 1e-3 && Math.abs(settings.getCropBottom() - 1f) < 1e-3)) {
-                                PageLayerEntity tmp = new PageLayerEntity(currentSheetId, original, "__virtual_crop__", "CROP");
-                                tmp.setCropLeft(settings.getCropLeft());
-                                tmp.setCropTop(settings.getCropTop());
-                                tmp.setCropRight(settings.getCropRight());
-                                tmp.setCropBottom(settings.getCropBottom());
-                                working = applyCrop(working, tmp);
-                            }
-                            if (settings.getBrightness() != 0f || Math.abs(settings.getContrast() - 1f) > 1e-3) {
-                                applyAdjustmentsInPlace(working, settings.getBrightness(), settings.getContrast());
-                            }
-                        }
-                    } catch (Throwable t) {
-                        Log.w(TAG, "exportCurrentPageBitmap: failed to apply page settings", t);
-                    }
-
-                    try {
-                        PageLayerEntity cropLayer = db.pageLayerDao().getLatestCropLayerForPage(currentSheetId, original);
-                        if (cropLayer != null && cropLayer.hasCrop()) {
-                            working = applyCrop(working, cropLayer);
-                        }
-                    } catch (Throwable t) {
-                        Log.w(TAG, "exportCurrentPageBitmap: failed to apply crop layer", t);
-                    }
-                }
-
-                if (variant == ShareVariant.CROPPED_ANNOTATED) {
-                    try {
-                        PageLayerEntity ann = AppDatabase.getDatabase(requireContext().getApplicationContext())
-                                .pageLayerDao().getActiveAnnotationLayer(currentSheetId, original);
-                        if (ann != null) {
-                            String path = ann.getLayerImagePath();
-                            if (path != null && !path.isEmpty()) {
-                                android.graphics.Bitmap overlay = android.graphics.BitmapFactory.decodeFile(path);
-                                if (overlay != null) {
-                                    android.graphics.Canvas canvas = new android.graphics.Canvas(working);
-                                    if (overlay.getWidth() != working.getWidth() || overlay.getHeight() != working.getHeight()) {
-                                        android.graphics.Bitmap scaled = android.graphics.Bitmap.createScaledBitmap(overlay, working.getWidth(), working.getHeight(), true);
-                                        canvas.drawBitmap(scaled, 0, 0, null);
-                                        if (scaled != overlay) scaled.recycle();
-                                        overlay.recycle();
-                                    } else {
-                                        canvas.drawBitmap(overlay, 0, 0, null);
-                                        overlay.recycle();
-                                    }
-                                }
-                            }
-                        }
-                    } catch (Throwable t) {
-                        Log.w(TAG, "exportCurrentPageBitmap: failed to overlay annotation", t);
-                    }
-                }
-
-                android.graphics.Bitmap result = working;
+                android.graphics.Bitmap result = composeExportPage(original, variant);
                 runOnUiThread(() -> callback.accept(result));
             } catch (Throwable t) {
                 Log.e(TAG, "exportCurrentPageBitmap failed", t);
                 runOnUiThread(() -> callback.accept(null));
             }
-        }).start();
+        });
     }
 
     public void exportFullSheetPdf(final ShareVariant variant, final java.util.function.Consumer<java.io.File> callback) {
-        new Thread(() -> {
+        scheduler().submit(RenderScheduler.Priority.EXPORT, () -> {
             com.tom_roush.pdfbox.pdmodel.PDDocument outDoc = null;
             try {
                 if (currentPdfFile == null) {
@@ -2562,92 +2859,8 @@ public class SheetDetailFragment extends Fragment {
 
                 for (int logical = 0; logical < total; logical++) {
                     int original = mapLogicalToOriginal(logical);
-                    float scale = (!androidRendererOnly && renderer != null) ? getPdfBoxRenderScale() : getAndroidRenderScale();
-                    android.graphics.Bitmap baseBitmap;
-                    try {
-                        synchronized (renderLock) {
-                            baseBitmap = renderer != null ? renderer.renderImage(original, scale) : null;
-                        }
-                    } catch (OutOfMemoryError oom) {
-                        android.util.Log.e(TAG, "exportFullSheetPdf: PdfBox render OOM; using Android PdfRenderer", oom);
-                        if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                        baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, getAndroidRenderScale());
-                    } catch (Throwable t) {
-                        android.util.Log.e(TAG, "exportFullSheetPdf: PdfBox render failed; using Android PdfRenderer", t);
-                        if (currentPdfFile != null) switchToAndroidRendererOnly(currentPdfFile);
-                        baseBitmap = renderWithAndroidPdfRenderer(currentPdfFile, original, getAndroidRenderScale());
-                    }
-
-                    if (baseBitmap == null) continue; // skip page on failure
-
-                    android.graphics.Bitmap working = baseBitmap;
-
-                    if (variant != ShareVariant.ORIGINAL) {
-                        AppDatabase db = AppDatabase.getDatabase(requireContext().getApplicationContext());
-                        try {
-                            PageSettingsEntity settings = db.pageSettingsDao().getByPage(currentSheetId, original);
-                            if (settings != null) {
-                                if (settings.getRotation() != 0f) {
-                                    android.graphics.Bitmap rotated = applyRotation(working, settings.getRotation());
-                                    if (working != baseBitmap && working != rotated && !working.isRecycled()) working.recycle();
-                                    working = rotated;
-                                }
-                                if (!(Math.abs(settings.getCropLeft()) < 1e-3 && Math.abs(settings.getCropTop()) < 1e-3 && Math.abs(settings.getCropRight() - 1f) < 1e-3 && Math.abs(settings.getCropBottom() - 1f) < 1e-3)) {
-                                    PageLayerEntity tmp = new PageLayerEntity(currentSheetId, original, "__virtual_crop__", "CROP");
-                                    tmp.setCropLeft(settings.getCropLeft());
-                                    tmp.setCropTop(settings.getCropTop());
-                                    tmp.setCropRight(settings.getCropRight());
-                                    tmp.setCropBottom(settings.getCropBottom());
-                                    android.graphics.Bitmap cropped = applyCrop(working, tmp);
-                                    if (working != baseBitmap && working != cropped && !working.isRecycled()) working.recycle();
-                                    working = cropped;
-                                }
-                                if (settings.getBrightness() != 0f || Math.abs(settings.getContrast() - 1f) > 1e-3) {
-                                    applyAdjustmentsInPlace(working, settings.getBrightness(), settings.getContrast());
-                                }
-                            }
-                        } catch (Throwable t) {
-                            android.util.Log.w(TAG, "exportFullSheetPdf: failed to apply page settings", t);
-                        }
-
-                        try {
-                            PageLayerEntity cropLayer = AppDatabase.getDatabase(requireContext().getApplicationContext()).pageLayerDao().getLatestCropLayerForPage(currentSheetId, original);
-                            if (cropLayer != null && cropLayer.hasCrop()) {
-                                android.graphics.Bitmap cropped = applyCrop(working, cropLayer);
-                                if (working != baseBitmap && working != cropped && !working.isRecycled()) working.recycle();
-                                working = cropped;
-                            }
-                        } catch (Throwable t) {
-                            android.util.Log.w(TAG, "exportFullSheetPdf: failed to apply crop layer", t);
-                        }
-                    }
-
-                    if (variant == ShareVariant.CROPPED_ANNOTATED) {
-                        try {
-                            PageLayerEntity ann = AppDatabase.getDatabase(requireContext().getApplicationContext())
-                                    .pageLayerDao().getActiveAnnotationLayer(currentSheetId, original);
-                            if (ann != null) {
-                                String path = ann.getLayerImagePath();
-                                if (path != null && !path.isEmpty()) {
-                                    android.graphics.Bitmap overlay = android.graphics.BitmapFactory.decodeFile(path);
-                                    if (overlay != null) {
-                                        android.graphics.Canvas canvas = new android.graphics.Canvas(working);
-                                        if (overlay.getWidth() != working.getWidth() || overlay.getHeight() != working.getHeight()) {
-                                            android.graphics.Bitmap scaled = android.graphics.Bitmap.createScaledBitmap(overlay, working.getWidth(), working.getHeight(), true);
-                                            canvas.drawBitmap(scaled, 0, 0, null);
-                                            if (scaled != overlay) scaled.recycle();
-                                            overlay.recycle();
-                                        } else {
-                                            canvas.drawBitmap(overlay, 0, 0, null);
-                                            overlay.recycle();
-                                        }
-                                    }
-                                }
-                            }
-                        } catch (Throwable t) {
-                            android.util.Log.w(TAG, "exportFullSheetPdf: failed to overlay annotation", t);
-                        }
-                    }
+                    android.graphics.Bitmap working = composeExportPage(original, variant);
+                    if (working == null) continue; // skip page on failure
 
                     // Add bitmap as a page in PDF
                     float w = working.getWidth();
@@ -2660,8 +2873,7 @@ public class SheetDetailFragment extends Fragment {
                     cs.drawImage(image, 0, 0, w, h);
                     cs.close();
 
-                    if (working != baseBitmap && !working.isRecycled()) working.recycle();
-                    if (!baseBitmap.isRecycled()) baseBitmap.recycle();
+                    BitmapPool.getInstance().release(working);
                 }
 
                 java.io.File dir = new java.io.File(requireContext().getCacheDir(), "share");
@@ -2701,13 +2913,13 @@ public class SheetDetailFragment extends Fragment {
                 try { if (outDoc != null) outDoc.close(); } catch (Throwable ignore) {}
                 runOnUiThread(() -> callback.accept(null));
             }
-        }).start();
+        });
     }
 
     // Public controls for toolbox Annotate button
     public void enterAnnotationMode() {
-        // While annotating, suppress compositing of persisted annotation layer to enable cross-session undo of last 20 steps
-        suppressAnnotationComposite = true;
+        // While annotating, hide the persisted annotation layer to enable cross-session undo of last 20 steps
+        if (annotationLayerView != null) annotationLayerView.setVisibility(View.INVISIBLE);
         View toolbar = annotationToolbar != null ? annotationToolbar : (getView() != null ? getView().findViewById(R.id.annotation_toolbar) : null);
         com.example.staffpad.views.AnnotationOverlayView overlay = annotationOverlay != null ? annotationOverlay : (getView() != null ? getView().findViewById(R.id.annotation_overlay) : null);
         if (toolbar != null && overlay != null) {
@@ -2730,16 +2942,14 @@ public class SheetDetailFragment extends Fragment {
                     if (vbar != null) vbar.setVisibility(View.GONE);
                 }
             }
-            // Redraw base page without persisted annotations
-            refreshPage();
-            // Load last 20 ops from previous session if available
+            // Load the saved ops of the active annotation layer so they can be edited and undone
             loadPreviousOpsIntoOverlay();
         }
         if (penPresetList != null) penPresetList.setVisibility(View.VISIBLE);
     }
 
     public void exitAnnotationMode() {
-        suppressAnnotationComposite = false;
+        if (annotationLayerView != null) annotationLayerView.setVisibility(View.VISIBLE);
         View toolbar = annotationToolbar != null ? annotationToolbar : (getView() != null ? getView().findViewById(R.id.annotation_toolbar) : null);
         com.example.staffpad.views.AnnotationOverlayView overlay = annotationOverlay != null ? annotationOverlay : (getView() != null ? getView().findViewById(R.id.annotation_overlay) : null);
         if (toolbar != null && overlay != null) {
@@ -2768,8 +2978,6 @@ public class SheetDetailFragment extends Fragment {
                 // Keep UI consistent: only show if we have tracks for this sheet
                 showBottomDialog();
             }
-            // Redraw with composited annotation layer visible again
-            refreshPage();
         }
         if (penPresetList != null) penPresetList.setVisibility(View.GONE);
     }
@@ -2900,60 +3108,9 @@ public class SheetDetailFragment extends Fragment {
                 Log.w(TAG, "Overlay has zero size; skipping save");
                 return;
             }
-            // Export current overlay as bitmap at overlay size
-            Bitmap overlayBmp = overlay.exportToBitmap(overlay.getWidth(), overlay.getHeight());
-            // Capture snapshot of items BEFORE clearing overlay (used for sidecar JSON)
-            final java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> opsSnapshot = overlay.getItemsSnapshot();
-
-            // Map overlay (view space) into the underlying image (drawable) space using PhotoView's display matrix.
-            // Fallback to simple scaling if required information is missing.
-            Bitmap finalBmp = null;
-            int targetW = overlayBmp.getWidth();
-            int targetH = overlayBmp.getHeight();
-            try {
-                android.graphics.drawable.Drawable d = photoView.getDrawable();
-                android.graphics.RectF displayRect = photoView.getDisplayRect();
-                if (d != null && d.getIntrinsicWidth() > 0 && d.getIntrinsicHeight() > 0 && displayRect != null && displayRect.width() > 0 && displayRect.height() > 0) {
-                    targetW = d.getIntrinsicWidth();
-                    targetH = d.getIntrinsicHeight();
-
-                    // drawable -> view transform is: scale by sx,sy then translate by tx,ty
-                    float sx = displayRect.width() / (float) targetW;
-                    float sy = displayRect.height() / (float) targetH;
-                    float tx = displayRect.left;
-                    float ty = displayRect.top;
-
-                    // We need inverse to map view-space overlay into drawable-space
-                    android.graphics.Matrix inv = new android.graphics.Matrix();
-                    inv.postTranslate(-tx, -ty);
-                    inv.postScale(1f / Math.max(1e-6f, sx), 1f / Math.max(1e-6f, sy));
-
-                    finalBmp = Bitmap.createBitmap(targetW, targetH, Bitmap.Config.ARGB_8888);
-                    android.graphics.Canvas mapCanvas = new android.graphics.Canvas(finalBmp);
-                    mapCanvas.drawBitmap(overlayBmp, inv, null);
-                    // We no longer need the overlay bitmap
-                    overlayBmp.recycle();
-                }
-            } catch (Throwable t) {
-                android.util.Log.w(TAG, "Falling back to naive scaling during save due to mapping error", t);
-            }
-
-            if (finalBmp == null) {
-                // Fallback: scale overlay bitmap to drawable's intrinsic size if available, else keep as-is
-                try {
-                    android.graphics.drawable.Drawable d = photoView.getDrawable();
-                    if (d != null && d.getIntrinsicWidth() > 0 && d.getIntrinsicHeight() > 0) {
-                        targetW = d.getIntrinsicWidth();
-                        targetH = d.getIntrinsicHeight();
-                    }
-                } catch (Throwable ignored) {}
-                if (overlayBmp.getWidth() != targetW || overlayBmp.getHeight() != targetH) {
-                    finalBmp = Bitmap.createScaledBitmap(overlayBmp, targetW, targetH, true);
-                    if (finalBmp != overlayBmp) overlayBmp.recycle();
-                } else {
-                    finalBmp = overlayBmp;
-                }
-            }
+            // Ops are stored relative to the displayed page, so they can be drawn at any resolution later
+            final java.util.List<AnnotationEntity> ops =
+                    toAnnotationOps(overlay.getItemsSnapshot(), annotationPageRect(overlay), currentSheetId, currentPage);
 
             // Immediately clear overlay on UI thread to avoid on-screen duplication
             runOnUiThread(() -> {
@@ -2962,111 +3119,40 @@ public class SheetDetailFragment extends Fragment {
                 } catch (Throwable ignored) {}
             });
 
-            // Decide target file based on existing active annotation layer
             Context appCtx = requireContext().getApplicationContext();
-            final File[] outFileHolder = new File[1];
             final long nowTs = System.currentTimeMillis();
-            // Make bitmap effectively final for use inside the background thread
-            final Bitmap finalBmpToSave = finalBmp;
             new Thread(() -> {
                 try {
                     AppDatabase db = AppDatabase.getDatabase(appCtx);
-                    PageLayerEntity existing = db.pageLayerDao().getActiveAnnotationLayer(currentSheetId, currentPage);
-
-                    File dir = new File(requireContext().getFilesDir(), "annotations");
-                    if (!dir.exists()) dir.mkdirs();
-
-                    File outFile;
-                    if (existing != null && existing.getLayerImagePath() != null && !existing.getLayerImagePath().isEmpty()) {
-                        outFile = new File(existing.getLayerImagePath());
-                    } else {
-                        String fileName = "annot_sheet_" + currentSheetId + "_page_" + currentPage + "_" + nowTs + ".png";
-                        outFile = new File(dir, fileName);
-                    }
-
-                    // Overwrite the annotation layer with ONLY the current overlay content (respecting undo), no compositing
-                    try {
-                        java.io.FileOutputStream fos = new java.io.FileOutputStream(outFile);
-                        finalBmpToSave.compress(Bitmap.CompressFormat.PNG, 100, fos);
-                        fos.flush(); fos.close();
-                    } finally {
-                        finalBmpToSave.recycle();
-                    }
-
-                    // Save sidecar ops JSON: write ONLY the current snapshot (trim to last 20)
-                    try {
-                        java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> snapshot = opsSnapshot;
-                        org.json.JSONArray trimmed = new org.json.JSONArray();
-                        int startIdx = Math.max(0, snapshot.size() - 20);
-                        for (int i = startIdx; i < snapshot.size(); i++) {
-                            com.example.staffpad.views.AnnotationOverlayView.AnnotationItem it = snapshot.get(i);
-                            org.json.JSONObject obj = new org.json.JSONObject();
-                            if (it instanceof com.example.staffpad.views.AnnotationOverlayView.Stroke) {
-                                com.example.staffpad.views.AnnotationOverlayView.Stroke s = (com.example.staffpad.views.AnnotationOverlayView.Stroke) it;
-                                obj.put("type", "stroke");
-                                obj.put("color", s.paint.getColor());
-                                obj.put("alpha", s.paint.getAlpha());
-                                obj.put("width", s.paint.getStrokeWidth());
-                                org.json.JSONArray pts = new org.json.JSONArray();
-                                for (float[] p : s.points) {
-                                    org.json.JSONArray pp = new org.json.JSONArray();
-                                    pp.put(p[0]); pp.put(p[1]);
-                                    pts.put(pp);
-                                }
-                                obj.put("points", pts);
-                            } else if (it instanceof com.example.staffpad.views.AnnotationOverlayView.EraseStroke) {
-                                com.example.staffpad.views.AnnotationOverlayView.EraseStroke es = (com.example.staffpad.views.AnnotationOverlayView.EraseStroke) it;
-                                obj.put("type", "erase");
-                                obj.put("width", es.paint.getStrokeWidth());
-                                org.json.JSONArray pts = new org.json.JSONArray();
-                                for (float[] p : es.points) {
-                                    org.json.JSONArray pp = new org.json.JSONArray();
-                                    pp.put(p[0]); pp.put(p[1]);
-                                    pts.put(pp);
-                                }
-                                obj.put("points", pts);
-                            } else if (it instanceof com.example.staffpad.views.AnnotationOverlayView.TextBox) {
-                                com.example.staffpad.views.AnnotationOverlayView.TextBox t = (com.example.staffpad.views.AnnotationOverlayView.TextBox) it;
-                                obj.put("type", "text");
-                                obj.put("text", t.text);
-                                obj.put("x", t.x);
-                                obj.put("y", t.y);
-                                obj.put("size", t.paint.getTextSize());
-                                obj.put("color", t.paint.getColor());
-                                obj.put("bold", t.bold);
-                            } else {
-                                obj.put("type", "unknown");
-                            }
-                            trimmed.put(obj);
+                    final String[] legacyImage = new String[1];
+                    // Replace the layer's ops in one transaction; the cost scales with the ink, not the page size
+                    db.runInTransaction(() -> {
+                        PageLayerEntity layer = db.pageLayerDao().getActiveAnnotationLayer(currentSheetId, currentPage);
+                        if (layer == null) {
+                            int maxOrder = db.pageLayerDao().getMaxOrderIndex(currentSheetId, currentPage);
+                            layer = new PageLayerEntity(currentSheetId, currentPage, "Annotations", "ANNOTATION");
+                            layer.setActive(true);
+                            layer.setOrderIndex(maxOrder + 1);
+                            layer.setModifiedAt(nowTs);
+                            layer.setCreatedAt(nowTs);
+                            layer.setId(db.pageLayerDao().insert(layer));
+                        } else {
+                            legacyImage[0] = layer.getLayerImagePath();
+                            layer.setLayerImagePath(null);
+                            layer.setModifiedAt(nowTs);
+                            db.pageLayerDao().update(layer);
+                            db.annotationDao().deleteForLayer(layer.getId());
                         }
-                        File jsonFile = new File(dir, outFile.getName().replace(".png", ".json"));
-                        org.json.JSONObject root = new org.json.JSONObject();
-                        root.put("ops", trimmed);
-                        java.io.FileWriter fw = new java.io.FileWriter(jsonFile);
-                        fw.write(root.toString()); fw.flush(); fw.close();
-                    } catch (Throwable t) { Log.w(TAG, "Failed writing ops JSON", t);}            
-
-                    // Persist the layer (update or insert)
-                    if (existing == null) {
-                        int maxOrder = db.pageLayerDao().getMaxOrderIndex(currentSheetId, currentPage);
-                        PageLayerEntity layer = new PageLayerEntity(currentSheetId, currentPage, "Annotations", "ANNOTATION");
-                        layer.setActive(true);
-                        layer.setOrderIndex(maxOrder + 1);
-                        layer.setLayerImagePath(outFile.getAbsolutePath());
-                        layer.setModifiedAt(nowTs);
-                        layer.setCreatedAt(nowTs);
-                        db.pageLayerDao().insert(layer);
-                    } else {
-                        existing.setLayerImagePath(outFile.getAbsolutePath());
-                        existing.setModifiedAt(nowTs);
-                        db.pageLayerDao().update(existing);
-                    }
+                        for (AnnotationEntity op : ops) op.setLayerId(layer.getId());
+                        db.annotationDao().insertAll(ops);
+                    });
+                    // A layer saved before ops were stored no longer needs its PNG and sidecar
+                    deleteLegacyAnnotationFiles(legacyImage[0]);
 
-                    // After saving, exit annotation mode so the saved layer composites on the main screen immediately
+                    // After saving, exit annotation mode and show the saved layer; the page bitmap itself is unchanged
                     runOnUiThread(() -> {
                         exitAnnotationMode();
-                        // Extra safety: force a follow-up refresh shortly after to avoid any race with file/DB observers
-                        new android.os.Handler(android.os.Looper.getMainLooper()).postDelayed(() -> refreshPage(), 150);
+                        invalidatePage(sheetId, currentPage, PageAspect.OVERLAY);
                     });
                 } catch (Throwable t) {
                     Log.e(TAG, "Failed to save annotation layer", t);
@@ -3078,4 +3164,112 @@ public class SheetDetailFragment extends Fragment {
         }
     }
 
+    /** The displayed page in overlay (view) coordinates; annotation ops are stored as fractions of it. */
+    private RectF annotationPageRect(View overlay) {
+        RectF rect = null;
+        try {
+            if (photoView != null && photoView.getDrawable() != null) rect = photoView.getDisplayRect();
+        } catch (Throwable ignore) {}
+        if (rect == null || rect.width() <= 0 || rect.height() <= 0) {
+            rect = new RectF(0, 0, Math.max(1, overlay.getWidth()), Math.max(1, overlay.getHeight()));
+        }
+        return rect;
+    }
+
+    /** Converts overlay items to ops relative to the page rect, in drawing order. Layer ids are set by the caller. */
+    private static java.util.List<AnnotationEntity> toAnnotationOps(
+            java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> items, RectF page,
+            long sheetId, int pageNumber) {
+        java.util.List<AnnotationEntity> ops = new ArrayList<>();
+        float w = page.width();
+        float h = page.height();
+        for (com.example.staffpad.views.AnnotationOverlayView.AnnotationItem it : items) {
+            AnnotationEntity op;
+            if (it instanceof com.example.staffpad.views.AnnotationOverlayView.Stroke) {
+                com.example.staffpad.views.AnnotationOverlayView.Stroke s = (com.example.staffpad.views.AnnotationOverlayView.Stroke) it;
+                op = new AnnotationEntity(0, sheetId, pageNumber, AnnotationEntity.TYPE_STROKE);
+                op.setColor(s.paint.getColor());
+                op.setStrokeWidth(s.paint.getStrokeWidth() / w);
+                op.setPoints(encodePagePoints(s.points, page, true));
+            } else if (it instanceof com.example.staffpad.views.AnnotationOverlayView.EraseStroke) {
+                com.example.staffpad.views.AnnotationOverlayView.EraseStroke es = (com.example.staffpad.views.AnnotationOverlayView.EraseStroke) it;
+                op = new AnnotationEntity(0, sheetId, pageNumber, AnnotationEntity.TYPE_ERASE);
+                op.setStrokeWidth(es.paint.getStrokeWidth() / w);
+                op.setPoints(encodePagePoints(es.points, page, false));
+            } else if (it instanceof com.example.staffpad.views.AnnotationOverlayView.TextBox) {
+                com.example.staffpad.views.AnnotationOverlayView.TextBox t = (com.example.staffpad.views.AnnotationOverlayView.TextBox) it;
+                op = new AnnotationEntity(0, sheetId, pageNumber, AnnotationEntity.TYPE_TEXT);
+                op.setText(t.text);
+                op.setX((t.x - page.left) / w);
+                op.setY((t.y - page.top) / h);
+                op.setTextSize(t.paint.getTextSize() / w);
+                op.setColor(t.paint.getColor());
+                op.setBold(t.bold);
+            } else {
+                continue;
+            }
+            op.setSeq(ops.size());
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    private static byte[] encodePagePoints(com.example.staffpad.views.StrokeBuffer points, RectF page, boolean withPressure) {
+        AnnotationCodec.PointWriter writer = new AnnotationCodec.PointWriter(withPressure, points.size());
+        for (int i = 0; i < points.size(); i++) {
+            writer.add((points.x(i) - page.left) / page.width(), (points.y(i) - page.top) / page.height(), points.pressure(i));
+        }
+        return writer.toByteArray();
+    }
+
+    /** Inverse of {@link #toAnnotationOps}: overlay items in view coordinates of the given page rect. */
+    private java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> toOverlayItems(
+            java.util.List<AnnotationEntity> ops, RectF page) {
+        java.util.List<com.example.staffpad.views.AnnotationOverlayView.AnnotationItem> list = new java.util.ArrayList<>();
+        float w = page.width();
+        float h = page.height();
+        for (AnnotationEntity op : ops) {
+            if (AnnotationEntity.TYPE_TEXT.equals(op.getType())) {
+                float sizePx = op.getTextSize() * w;
+                com.example.staffpad.views.AnnotationOverlayView.TextBox t = new com.example.staffpad.views.AnnotationOverlayView.TextBox(
+                        page.left + op.getX() * w, page.top + op.getY() * h, op.getColor(), 16f, op.isBold());
+                t.text = op.getText() != null ? op.getText() : "";
+                t.paint.setTextSize(sizePx);
+                t.textSizeSp = sizePx / getResources().getDisplayMetrics().scaledDensity;
+                list.add(t);
+                continue;
+            }
+            AnnotationCodec.PointReader points = new AnnotationCodec.PointReader(op.getPoints());
+            if (AnnotationEntity.TYPE_STROKE.equals(op.getType())) {
+                int color = op.getColor();
+                com.example.staffpad.views.AnnotationOverlayView.Stroke s =
+                        new com.example.staffpad.views.AnnotationOverlayView.Stroke(color, op.getStrokeWidth() * w, Color.alpha(color));
+                for (boolean first = true; points.next(); first = false) {
+                    s.addPoint(page.left + points.x() * w, page.top + points.y() * h, points.pressure(), 0L, first);
+                }
+                list.add(s);
+            } else if (AnnotationEntity.TYPE_ERASE.equals(op.getType())) {
+                com.example.staffpad.views.AnnotationOverlayView.EraseStroke es =
+                        new com.example.staffpad.views.AnnotationOverlayView.EraseStroke(op.getStrokeWidth() * w);
+                for (boolean first = true; points.next(); first = false) {
+                    es.addPoint(page.left + points.x() * w, page.top + points.y() * h, points.pressure(), 0L, first);
+                }
+                list.add(es);
+            }
+        }
+        return list;
+    }
+
+    /** Deletes the PNG and JSON sidecar of an annotation layer saved before ops were stored, if any. */
+    private static void deleteLegacyAnnotationFiles(String imagePath) {
+        if (imagePath == null || imagePath.isEmpty()) return;
+        OverlayBitmapCache.getInstance().invalidate(imagePath);
+        try {
+            new File(imagePath).delete();
+            new File(imagePath.replace(".png", ".json")).delete();
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to delete legacy annotation files", t);
+        }
+    }
+
 }
@@ -0,0 +1,179 @@
+package com.example.staffpad.database;
+
+import java.util.Arrays;
+
+/**
+ * Binary format of the stroke points of an {@link AnnotationEntity}.
+ * <p>
+ * Version 1: a header of magic byte, version and flags, then one record per point. Coordinates are page
+ * fractions quantized to 1/65536 of the page and stored as zigzag varint deltas from the previous point;
+ * consecutive stylus samples are close, so a point usually takes 2-4 bytes instead of two floats. With
+ * the pressure flag set, each record also carries a pressure delta in 1/1024 steps.
+ * <p>
+ * {@link PointWriter} encodes point by point into a growable buffer and {@link PointReader} decodes without
+ * building point arrays, so strokes stream between the editor, the renderer and Room.
+ */
+public final class AnnotationCodec {
+    public static final int VERSION = 1;
+
+    private static final int MAGIC = 0xA7;
+    private static final int HEADER_SIZE = 3;
+    private static final int FLAG_PRESSURE = 1;
+    private static final float COORD_SCALE = 65536f;
+    private static final float PRESSURE_SCALE = 1024f;
+
+    private AnnotationCodec() {
+    }
+
+    /** Encodes (x, y) pairs, plus one pressure per point if {@code pressure} is not null. */
+    public static byte[] encode(float[] xy, float[] pressure, int pointCount) {
+        PointWriter writer = new PointWriter(pressure != null, pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            if (pressure != null) {
+                writer.add(xy[2 * i], xy[2 * i + 1], pressure[i]);
+            } else {
+                writer.add(xy[2 * i], xy[2 * i + 1]);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    /** Streams points into a version 1 blob. Not thread-safe. */
+    public static final class PointWriter {
+        private final boolean withPressure;
+        private byte[] buffer;
+        private int length;
+        private int count;
+        private int lastX;
+        private int lastY;
+        private int lastPressure;
+
+        public PointWriter(boolean withPressure, int expectedPoints) {
+            this.withPressure = withPressure;
+            buffer = new byte[HEADER_SIZE + Math.max(8, expectedPoints * (withPressure ? 6 : 4))];
+            buffer[0] = (byte) MAGIC;
+            buffer[1] = (byte) VERSION;
+            buffer[2] = (byte) (withPressure ? FLAG_PRESSURE : 0);
+            length = HEADER_SIZE;
+        }
+
+        public void add(float x, float y) {
+            add(x, y, 1f);
+        }
+
+        /** Adds a point; the pressure is dropped unless the writer was created with a pressure channel. */
+        public void add(float x, float y, float pressure) {
+            int qx = Math.round(x * COORD_SCALE);
+            int qy = Math.round(y * COORD_SCALE);
+            writeVarint(zigzag(qx - lastX));
+            writeVarint(zigzag(qy - lastY));
+            lastX = qx;
+            lastY = qy;
+            if (withPressure) {
+                int qp = Math.round(pressure * PRESSURE_SCALE);
+                writeVarint(zigzag(qp - lastPressure));
+                lastPressure = qp;
+            }
+            count++;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buffer, length);
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > buffer.length) buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            while ((value & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[length++] = (byte) value;
+        }
+
+        private static int zigzag(int value) {
+            return (value << 1) ^ (value >> 31);
+        }
+    }
+
+    /**
+     * Iterates over the points of a blob: call {@link #next()} until it returns false, reading {@link #x()},
+     * {@link #y()} and {@link #pressure()} after each step. A blob without a valid header has no points, and a
+     * truncated record ends the iteration.
+     */
+    public static final class PointReader {
+        private final byte[] blob;
+        private final boolean withPressure;
+        private int position;
+        private int qx;
+        private int qy;
+        private int qp;
+        private float x;
+        private float y;
+        private float pressure = 1f;
+
+        public PointReader(byte[] blob) {
+            this.blob = blob != null ? blob : new byte[0];
+            boolean versioned = this.blob.length >= HEADER_SIZE
+                    && (this.blob[0] & 0xFF) == MAGIC
+                    && this.blob[1] >= 1 && this.blob[1] <= VERSION;
+            withPressure = versioned && (this.blob[2] & FLAG_PRESSURE) != 0;
+            position = versioned ? HEADER_SIZE : this.blob.length;
+        }
+
+        public boolean hasPressure() {
+            return withPressure;
+        }
+
+        public boolean next() {
+            if (position >= blob.length) return false;
+            int dx = readVarint();
+            int dy = readVarint();
+            int dp = withPressure ? readVarint() : 0;
+            if (position > blob.length) return false;
+            qx += unzigzag(dx);
+            qy += unzigzag(dy);
+            x = qx / COORD_SCALE;
+            y = qy / COORD_SCALE;
+            if (withPressure) {
+                qp += unzigzag(dp);
+                pressure = qp / PRESSURE_SCALE;
+            }
+            return true;
+        }
+
+        public float x() {
+            return x;
+        }
+
+        public float y() {
+            return y;
+        }
+
+        /** Pressure of the current point; 1 when the blob has no pressure channel. */
+        public float pressure() {
+            return pressure;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                if (position >= blob.length) {
+                    position = blob.length + 1; // truncated
+                    return 0;
+                }
+                int b = blob[position++];
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            return value;
+        }
+
+        private static int unzigzag(int value) {
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.staffpad.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface AnnotationDao {
+    @Insert
+    void insertAll(List<AnnotationEntity> annotations);
+
+    @Query("SELECT * FROM annotations WHERE layer_id = :layerId ORDER BY seq ASC, id ASC")
+    List<AnnotationEntity> getForLayerSync(long layerId);
+
+    @Query("DELETE FROM annotations WHERE layer_id = :layerId")
+    void deleteForLayer(long layerId);
+}
@@ -0,0 +1,199 @@
+package com.example.staffpad.database;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * One annotation op (pen stroke, eraser stroke or text box) of an ANNOTATION layer, in drawing order.
+ * <p>
+ * Coordinates, stroke widths and text sizes are fractions of the page width/height (x and widths of the
+ * width, y of the height), so the ops can be drawn at any resolution. Stroke points are stored as one BLOB
+ * per op in the {@link AnnotationCodec} format.
+ */
+@Entity(
+        tableName = "annotations",
+        foreignKeys = {
+                @ForeignKey(
+                        entity = PageLayerEntity.class,
+                        parentColumns = "id",
+                        childColumns = "layer_id",
+                        onDelete = ForeignKey.CASCADE
+                )
+        },
+        indices = {
+                @Index(value = {"layer_id", "seq"}),
+                @Index(value = {"sheet_id", "page_number"})
+        }
+)
+public class AnnotationEntity {
+    public static final String TYPE_STROKE = "STROKE";
+    public static final String TYPE_ERASE = "ERASE";
+    public static final String TYPE_TEXT = "TEXT";
+
+    @PrimaryKey(autoGenerate = true)
+    private long id;
+
+    @ColumnInfo(name = "layer_id")
+    private long layerId;
+
+    @ColumnInfo(name = "sheet_id")
+    private long sheetId;
+
+    @ColumnInfo(name = "page_number")
+    private int pageNumber;
+
+    @ColumnInfo(name = "seq")
+    private int seq; // Drawing order within the layer
+
+    @ColumnInfo(name = "type")
+    private String type; // "STROKE", "ERASE", "TEXT"
+
+    @ColumnInfo(name = "color")
+    private int color; // ARGB, alpha included
+
+    @ColumnInfo(name = "stroke_width")
+    private float strokeWidth;
+
+    // Strokes: points encoded with AnnotationCodec
+    @ColumnInfo(name = "points", typeAffinity = ColumnInfo.BLOB)
+    private byte[] points;
+
+    // Text boxes: baseline start and size
+    @ColumnInfo(name = "text")
+    private String text;
+
+    @ColumnInfo(name = "x")
+    private float x;
+
+    @ColumnInfo(name = "y")
+    private float y;
+
+    @ColumnInfo(name = "text_size")
+    private float textSize;
+
+    @ColumnInfo(name = "bold")
+    private boolean bold;
+
+    public AnnotationEntity(long layerId, long sheetId, int pageNumber, String type) {
+        this.layerId = layerId;
+        this.sheetId = sheetId;
+        this.pageNumber = pageNumber;
+        this.type = type;
+    }
+
+    // Getters and Setters
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public long getLayerId() {
+        return layerId;
+    }
+
+    public void setLayerId(long layerId) {
+        this.layerId = layerId;
+    }
+
+    public long getSheetId() {
+        return sheetId;
+    }
+
+    public void setSheetId(long sheetId) {
+        this.sheetId = sheetId;
+    }
+
+    public int getPageNumber() {
+        return pageNumber;
+    }
+
+    public void setPageNumber(int pageNumber) {
+        this.pageNumber = pageNumber;
+    }
+
+    public int getSeq() {
+        return seq;
+    }
+
+    public void setSeq(int seq) {
+        this.seq = seq;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public int getColor() {
+        return color;
+    }
+
+    public void setColor(int color) {
+        this.color = color;
+    }
+
+    public float getStrokeWidth() {
+        return strokeWidth;
+    }
+
+    public void setStrokeWidth(float strokeWidth) {
+        this.strokeWidth = strokeWidth;
+    }
+
+    public byte[] getPoints() {
+        return points;
+    }
+
+    public void setPoints(byte[] points) {
+        this.points = points;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public void setX(float x) {
+        this.x = x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public void setY(float y) {
+        this.y = y;
+    }
+
+    public float getTextSize() {
+        return textSize;
+    }
+
+    public void setTextSize(float textSize) {
+        this.textSize = textSize;
+    }
+
+    public boolean isBold() {
+        return bold;
+    }
+
+    public void setBold(boolean bold) {
+        this.bold = bold;
+    }
+}
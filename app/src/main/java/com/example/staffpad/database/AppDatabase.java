@@ -6,6 +6,7 @@ import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
 import java.util.concurrent.ExecutorService;
@@ -22,9 +23,10 @@ import java.util.concurrent.Executors;
                 SheetTagCrossRef.class,
                 LibraryEntity.class,
                 PageLayerEntity.class,
-                PageSettingsEntity.class
+                PageSettingsEntity.class,
+                AnnotationEntity.class
         },
-        version = 4,
+        version = 6,
         exportSchema = false
 )
 public abstract class AppDatabase extends RoomDatabase {
@@ -35,6 +37,7 @@ public abstract class AppDatabase extends RoomDatabase {
     public abstract LibraryDao libraryDao();
     public abstract PageLayerDao pageLayerDao();
     public abstract PageSettingsDao pageSettingsDao();
+    public abstract AnnotationDao annotationDao();
     private static volatile AppDatabase INSTANCE;
     private static final int NUMBER_OF_THREADS = 4;
     public static final ExecutorService databaseWriteExecutor =
@@ -48,6 +51,7 @@ public abstract class AppDatabase extends RoomDatabase {
                                     context.getApplicationContext(),
                                     AppDatabase.class,
                                     "staffpad_database")
+                            .addMigrations(MIGRATION_4_5, MIGRATION_5_6)
                             .fallbackToDestructiveMigration()
                             .addCallback(sRoomDatabaseCallback)
                             .build();
@@ -57,6 +61,43 @@ public abstract class AppDatabase extends RoomDatabase {
         return INSTANCE;
     }
 
+    /**
+     * Adds the per-sheet renderer choice without dropping the library.
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE sheets ADD COLUMN preferred_renderer TEXT");
+        }
+    };
+
+    /**
+     * Adds vector annotation ops. Existing annotation layers keep their PNG until they are saved again.
+     */
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `annotations` ("
+                    + "`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`layer_id` INTEGER NOT NULL, "
+                    + "`sheet_id` INTEGER NOT NULL, "
+                    + "`page_number` INTEGER NOT NULL, "
+                    + "`seq` INTEGER NOT NULL, "
+                    + "`type` TEXT, "
+                    + "`color` INTEGER NOT NULL, "
+                    + "`stroke_width` REAL NOT NULL, "
+                    + "`points` BLOB, "
+                    + "`text` TEXT, "
+                    + "`x` REAL NOT NULL, "
+                    + "`y` REAL NOT NULL, "
+                    + "`text_size` REAL NOT NULL, "
+                    + "`bold` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`layer_id`) REFERENCES `page_layers`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_annotations_layer_id_seq` ON `annotations` (`layer_id`, `seq`)");
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_annotations_sheet_id_page_number` ON `annotations` (`sheet_id`, `page_number`)");
+        }
+    };
+
     /**
      * Override the onCreate method to populate the database with initial data.
      */
@@ -23,6 +23,9 @@ public interface PageLayerDao {
     @Query("SELECT * FROM page_layers WHERE sheet_id = :sheetId AND page_number = :pageNumber AND is_active = 1 AND layer_type != 'CROP' ORDER BY order_index ASC, id ASC")
     LiveData<List<PageLayerEntity>> getActiveLayersForPage(long sheetId, int pageNumber);
 
+    @Query("SELECT * FROM page_layers WHERE sheet_id = :sheetId AND page_number = :pageNumber AND is_active = 1 AND layer_type != 'CROP' ORDER BY order_index ASC, id ASC")
+    List<PageLayerEntity> getActiveLayersForPageSync(long sheetId, int pageNumber);
+
     @Query("SELECT * FROM page_layers WHERE sheet_id = :sheetId AND page_number = :pageNumber AND layer_type != 'CROP' ORDER BY order_index ASC, id ASC")
     LiveData<List<PageLayerEntity>> getAllLayersForPage(long sheetId, int pageNumber);
 
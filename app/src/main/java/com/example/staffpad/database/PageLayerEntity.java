@@ -242,4 +242,20 @@ public class PageLayerEntity {
     public boolean hasAdjustments() {
         return brightness != 0 || contrast != 1.0f;
     }
+
+    /**
+     * Annotation layers without geometry or adjustments are drawn live above the page
+     * (see {@link com.example.staffpad.views.AnnotationLayerView}) instead of into the page bitmap.
+     */
+    public boolean isAnnotationOverlay() {
+        return "ANNOTATION".equalsIgnoreCase(layerType) && !hasCrop() && !hasRotation() && !hasAdjustments();
+    }
+
+    /**
+     * Annotation layers saved as vector ops ({@link AnnotationEntity}) have no layer image; older ones
+     * still point at a PNG.
+     */
+    public boolean isVectorAnnotation() {
+        return "ANNOTATION".equalsIgnoreCase(layerType) && (layerImagePath == null || layerImagePath.isEmpty());
+    }
 }
\ No newline at end of file
@@ -49,6 +49,9 @@ public interface SheetDao {
     @Query("UPDATE sheets SET last_opened_at = :timestamp WHERE id = :sheetId")
     void updateLastOpenedAt(long sheetId, long timestamp);
 
+    @Query("UPDATE sheets SET preferred_renderer = :renderer WHERE id = :sheetId")
+    void updatePreferredRenderer(long sheetId, String renderer);
+
     @Query("SELECT DISTINCT composers FROM sheets WHERE composers IS NOT NULL AND composers != ''")
     LiveData<List<String>> getAllComposers();
 
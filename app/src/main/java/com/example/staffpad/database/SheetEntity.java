@@ -59,6 +59,10 @@ public class SheetEntity implements Parcelable {
     @ColumnInfo(name = "deleted_pages_json")
     private String deletedPagesJson; // e.g., "[4,7]" original page indices deleted
 
+    // PDF backend measured for this sheet ("PDFBOX" or "ANDROID"); null until the first open
+    @ColumnInfo(name = "preferred_renderer")
+    private String preferredRenderer;
+
     // Constructor
     public SheetEntity(String title, String filename, String filePath, long fileSize, int pageCount) {
         this.title = title;
@@ -88,6 +92,7 @@ public class SheetEntity implements Parcelable {
         lastOpenedAt = in.readLong();
         pageOrderJson = in.readString();
         deletedPagesJson = in.readString();
+        preferredRenderer = in.readString();
     }
 
     public static final Creator<SheetEntity> CREATOR = new Creator<SheetEntity>() {
@@ -238,6 +243,14 @@ public class SheetEntity implements Parcelable {
         this.deletedPagesJson = deletedPagesJson;
     }
 
+    public String getPreferredRenderer() {
+        return preferredRenderer;
+    }
+
+    public void setPreferredRenderer(String preferredRenderer) {
+        this.preferredRenderer = preferredRenderer;
+    }
+
     @Override
     public int describeContents() {
         return 0;
@@ -261,5 +274,6 @@ public class SheetEntity implements Parcelable {
         dest.writeLong(lastOpenedAt);
         dest.writeString(pageOrderJson);
         dest.writeString(deletedPagesJson);
+        dest.writeString(preferredRenderer);
     }
 }
\ No newline at end of file
@@ -0,0 +1,88 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.pdf.PdfRenderer;
+
+import java.io.File;
+import java.io.IOException;
+
+/** {@link PageRenderer} on Android's PdfRenderer, backed by a shared {@link PdfRendererSession}. */
+public final class AndroidPageRenderer implements PageRenderer {
+    private final PdfRendererSession session;
+    private volatile boolean closed = false;
+
+    private AndroidPageRenderer(PdfRendererSession session) {
+        this.session = session;
+    }
+
+    public static AndroidPageRenderer open(File file) throws IOException {
+        return new AndroidPageRenderer(PdfRendererSession.acquire(file));
+    }
+
+    /** Session for callers that need PdfRenderer directly (e.g. the tile view's transform renders). */
+    public PdfRendererSession getSession() {
+        return session;
+    }
+
+    @Override
+    public RendererSelector.Backend getBackend() {
+        return RendererSelector.Backend.ANDROID;
+    }
+
+    @Override
+    public int getPageCount() {
+        return session.getPageCount();
+    }
+
+    @Override
+    public float[] getPageSize(int pageIndex) throws IOException {
+        try {
+            return session.withPage(pageIndex, page -> new float[] { page.getWidth(), page.getHeight() });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not open page " + pageIndex, e);
+        }
+    }
+
+    @Override
+    public Bitmap render(int pageIndex, float scale) throws IOException {
+        try {
+            return session.renderPage(pageIndex, scale);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("PdfRenderer failed on page " + pageIndex, e);
+        }
+    }
+
+    @Override
+    public Bitmap render(int pageIndex, Matrix transform, int width, int height) throws IOException {
+        try {
+            return session.withPage(pageIndex, page -> {
+                Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+                try {
+                    bitmap.eraseColor(Color.WHITE);
+                    page.render(bitmap, null, transform, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                    return bitmap;
+                } catch (RuntimeException e) {
+                    BitmapPool.getInstance().release(bitmap);
+                    throw e;
+                }
+            });
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("PdfRenderer failed on page " + pageIndex, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        session.release();
+    }
+}
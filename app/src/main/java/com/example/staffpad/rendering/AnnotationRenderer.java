@@ -0,0 +1,62 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffXfermode;
+import android.text.TextPaint;
+
+import com.example.staffpad.database.AnnotationCodec;
+import com.example.staffpad.database.AnnotationEntity;
+
+import java.util.List;
+
+/**
+ * Draws vector annotation ops ({@link AnnotationEntity}) onto a canvas at any page size.
+ * <p>
+ * Eraser ops clear pixels (CLEAR xfermode), so the target must hold the annotations only: an overlay bitmap,
+ * or a {@link Canvas#saveLayer} over a page.
+ */
+public final class AnnotationRenderer {
+    private AnnotationRenderer() {
+    }
+
+    /** Draws the ops in order, scaled to a page of width×height pixels. */
+    public static void draw(Canvas canvas, List<AnnotationEntity> ops, float width, float height) {
+        if (ops == null) return;
+        Paint stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stroke.setStyle(Paint.Style.STROKE);
+        stroke.setStrokeJoin(Paint.Join.ROUND);
+        stroke.setStrokeCap(Paint.Cap.ROUND);
+        Paint erase = new Paint(stroke);
+        erase.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
+        TextPaint text = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        Path path = new Path();
+        for (AnnotationEntity op : ops) {
+            String type = op.getType();
+            if (AnnotationEntity.TYPE_TEXT.equals(type)) {
+                if (op.getText() == null || op.getText().isEmpty()) continue;
+                text.setColor(op.getColor());
+                text.setTextSize(op.getTextSize() * width);
+                text.setFakeBoldText(op.isBold());
+                canvas.drawText(op.getText(), op.getX() * width, op.getY() * height, text);
+                continue;
+            }
+            boolean isErase = AnnotationEntity.TYPE_ERASE.equals(type);
+            if (!isErase && !AnnotationEntity.TYPE_STROKE.equals(type)) continue;
+            // Points go straight from the blob into the path
+            AnnotationCodec.PointReader points = new AnnotationCodec.PointReader(op.getPoints());
+            if (!points.next()) continue;
+            path.rewind();
+            path.moveTo(points.x() * width, points.y() * height);
+            while (points.next()) {
+                path.lineTo(points.x() * width, points.y() * height);
+            }
+            Paint paint = isErase ? erase : stroke;
+            if (!isErase) paint.setColor(op.getColor());
+            paint.setStrokeWidth(Math.max(0.5f, op.getStrokeWidth() * width));
+            canvas.drawPath(path, paint);
+        }
+    }
+}
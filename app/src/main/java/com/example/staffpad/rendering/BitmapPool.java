@@ -0,0 +1,162 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Process-wide pool of mutable bitmaps bucketed by exact size and config, so that page renders,
+ * compositing intermediates and decoded overlays reuse memory instead of allocating a full page each time.
+ * <p>
+ * Ownership is explicit: a bitmap from {@link #acquire} belongs to the caller until it is handed to
+ * {@link #release}. Code that keeps a bitmap on screen or reads it on another thread {@link #pin}s it;
+ * releasing a pinned bitmap is deferred until the last {@link #unpin}, so nothing that PhotoView still
+ * displays is ever handed out again. The pool is bounded by bytes and drops the least recently used
+ * buckets first.
+ */
+public final class BitmapPool {
+    private static final int HEAP_FRACTION = 10;
+    private static final int MAX_BYTES = 64 * 1024 * 1024;
+
+    private static volatile BitmapPool INSTANCE;
+
+    private final long maxBytes;
+    // Access-ordered so that the least recently used bucket is trimmed first
+    private final LinkedHashMap<String, ArrayDeque<Bitmap>> buckets = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Bitmap> pooled = Collections.newSetFromMap(new IdentityHashMap<>());
+    // Weak keys: a pinned bitmap that nobody references anymore can still be collected
+    private final Map<Bitmap, Integer> pins = new WeakHashMap<>();
+    private final Set<Bitmap> releaseWhenUnpinned = Collections.newSetFromMap(new WeakHashMap<>());
+    private long pooledBytes = 0;
+
+    private BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public static BitmapPool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (BitmapPool.class) {
+                if (INSTANCE == null) {
+                    long heapBudget = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+                    INSTANCE = new BitmapPool(Math.min(heapBudget, MAX_BYTES));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a mutable bitmap of exactly the requested size and config, cleared to transparent.
+     */
+    public Bitmap acquire(int width, int height, Bitmap.Config config) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        Bitmap reused = null;
+        synchronized (this) {
+            ArrayDeque<Bitmap> bucket = buckets.get(bucketKey(width, height, config));
+            while (bucket != null && !bucket.isEmpty()) {
+                Bitmap candidate = bucket.pop();
+                pooled.remove(candidate);
+                pooledBytes -= candidate.getAllocationByteCount();
+                if (!candidate.isRecycled()) {
+                    reused = candidate;
+                    break;
+                }
+            }
+        }
+        if (reused != null) {
+            reused.eraseColor(Color.TRANSPARENT);
+            return reused;
+        }
+        return Bitmap.createBitmap(width, height, config);
+    }
+
+    /**
+     * Hands a bitmap back to the pool. The caller must not use it afterwards. Pinned bitmaps are pooled
+     * once they are unpinned; immutable, recycled or hardware bitmaps are simply dropped.
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || bitmap.getConfig() == null || bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            return;
+        }
+        synchronized (this) {
+            if (pins.containsKey(bitmap)) {
+                releaseWhenUnpinned.add(bitmap);
+                return;
+            }
+            addToPool(bitmap);
+        }
+    }
+
+    /** Marks a bitmap as in use (e.g. displayed); it is not reused while pinned. */
+    public synchronized void pin(Bitmap bitmap) {
+        if (bitmap == null) return;
+        Integer count = pins.get(bitmap);
+        pins.put(bitmap, count == null ? 1 : count + 1);
+    }
+
+    public synchronized void unpin(Bitmap bitmap) {
+        if (bitmap == null) return;
+        Integer count = pins.get(bitmap);
+        if (count == null) return;
+        if (count > 1) {
+            pins.put(bitmap, count - 1);
+            return;
+        }
+        pins.remove(bitmap);
+        if (releaseWhenUnpinned.remove(bitmap) && !bitmap.isRecycled()) {
+            addToPool(bitmap);
+        }
+    }
+
+    /** Drops all pooled bitmaps, e.g. on memory pressure. */
+    public synchronized void clear() {
+        buckets.clear();
+        pooled.clear();
+        pooledBytes = 0;
+    }
+
+    private void addToPool(Bitmap bitmap) {
+        if (!pooled.add(bitmap)) return; // already pooled
+        int size = bitmap.getAllocationByteCount();
+        if (size > maxBytes) {
+            pooled.remove(bitmap);
+            return;
+        }
+        String key = bucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+        bucket.push(bitmap);
+        pooledBytes += size;
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, ArrayDeque<Bitmap>>> it = buckets.entrySet().iterator();
+        while (pooledBytes > maxBytes && it.hasNext()) {
+            ArrayDeque<Bitmap> bucket = it.next().getValue();
+            while (pooledBytes > maxBytes && !bucket.isEmpty()) {
+                Bitmap dropped = bucket.removeLast();
+                pooled.remove(dropped);
+                pooledBytes -= dropped.getAllocationByteCount();
+            }
+            if (bucket.isEmpty()) it.remove();
+        }
+    }
+
+    private static String bucketKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+}
@@ -0,0 +1,314 @@
+package com.example.staffpad.rendering;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.staffpad.utils.SharedPreferencesHelper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Persistent cache of rendered pages under {@code cacheDir/pages}, so pages opened in an earlier session
+ * do not have to be rasterized again.
+ * <p>
+ * Pages are stored losslessly as deflate-compressed pixels: 8-bit gray when every pixel is exactly gray
+ * (the usual case for rendered sheet music), 16-bit for RGB_565 pages, ARGB otherwise. Keys include
+ * the PDF's path, size and modification time, the page, the render scale and a state hash, so an edited
+ * PDF, a different scale or changed page settings/layers never hit stale entries. The directory is kept under a byte budget by evicting the
+ * least recently used files; reads refresh a file's timestamp. Writes happen on a background thread.
+ * With reduced depth enabled, gray and 16-bit entries are read back as RGB_565 (see {@link PageColorDepth}).
+ */
+public final class DiskPageCache {
+    private static final String TAG = "DiskPageCache";
+    private static final String DIR_NAME = "pages";
+    private static final String SUFFIX = ".page";
+
+    private static final int MAGIC = 0x53504331; // "SPC1"
+    private static final byte FORMAT_ARGB = 1;
+    private static final byte FORMAT_GRAY8 = 2;
+    private static final byte FORMAT_RGB565 = 3;
+    // Trim to this share of the budget so that eviction does not run on every write
+    private static final float TRIM_TARGET = 0.9f;
+
+    private static volatile DiskPageCache INSTANCE;
+
+    private final File dir;
+    private final ExecutorService writer;
+    private volatile long maxBytes;
+    private volatile boolean reducedDepth;
+
+    private DiskPageCache(File dir, long maxBytes, boolean reducedDepth) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        this.reducedDepth = reducedDepth;
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "page-disk-cache");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static DiskPageCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (DiskPageCache.class) {
+                if (INSTANCE == null) {
+                    Context app = context.getApplicationContext();
+                    SharedPreferencesHelper prefs = new SharedPreferencesHelper(app);
+                    long budget = prefs.getPageCacheBudgetMb() * 1024L * 1024L;
+                    INSTANCE = new DiskPageCache(new File(app.getCacheDir(), DIR_NAME), budget,
+                            prefs.isReducedDepthPages());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /** Changes the byte budget; a budget of 0 disables the cache and deletes its contents. */
+    public void setMaxBytes(long bytes) {
+        maxBytes = Math.max(0, bytes);
+        writer.execute(this::trim);
+    }
+
+    /** Whether gray entries are decoded as RGB_565 instead of ARGB_8888. */
+    public void setReducedDepth(boolean enabled) {
+        reducedDepth = enabled;
+    }
+
+    /**
+     * Builds a cache key for a rendered page.
+     * @param originalPage page index in the PDF file
+     * @param stateHash page state (see {@link PageBitmapCache#stateHash}); 0 for the plain PDF raster
+     */
+    public static String key(File pdf, int originalPage, float scale, long stateHash) {
+        String path;
+        try {
+            path = pdf.getCanonicalPath();
+        } catch (IOException e) {
+            path = pdf.getAbsolutePath();
+        }
+        return path + "|" + pdf.length() + "|" + pdf.lastModified() + "|" + originalPage + "|"
+                + Math.round(scale * 1000f) + "|" + Long.toHexString(stateHash);
+    }
+
+    /** Returns the cached page or null. Blocking; call from a worker thread. */
+    public Bitmap get(String key) {
+        if (key == null || maxBytes <= 0) return null;
+        File file = fileFor(key);
+        if (!file.exists()) return null;
+        try (DataInputStream in = new DataInputStream(new InflaterInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) throw new IOException("Bad header");
+            byte format = in.readByte();
+            int width = in.readInt();
+            int height = in.readInt();
+            if (width <= 0 || height <= 0) throw new IOException("Bad size " + width + "x" + height);
+            if (format != FORMAT_ARGB && format != FORMAT_GRAY8 && format != FORMAT_RGB565) {
+                throw new IOException("Bad format " + format);
+            }
+            Bitmap.Config config = format != FORMAT_ARGB && reducedDepth
+                    ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+            Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, config);
+            int[] row = new int[width];
+            byte[] raw = new byte[width * bytesPerPixel(format)];
+            for (int y = 0; y < height; y++) {
+                in.readFully(raw);
+                if (format == FORMAT_GRAY8) {
+                    for (int x = 0; x < width; x++) {
+                        int v = raw[x] & 0xff;
+                        row[x] = 0xff000000 | (v << 16) | (v << 8) | v;
+                    }
+                } else if (format == FORMAT_RGB565) {
+                    for (int x = 0; x < width; x++) {
+                        int v = (raw[2 * x] & 0xff) << 8 | (raw[2 * x + 1] & 0xff);
+                        int r = v >> 11;
+                        int g = (v >> 5) & 0x3f;
+                        int b = v & 0x1f;
+                        // Same expansion as Android's, so drawing the page into RGB_565 again gives the stored bits
+                        row[x] = 0xff000000 | (r << 19 | (r >> 2) << 16) | (g << 10 | (g >> 4) << 8) | (b << 3 | b >> 2);
+                    }
+                } else {
+                    ByteBuffer.wrap(raw).asIntBuffer().get(row);
+                }
+                bitmap.setPixels(row, 0, width, 0, y, width, 1);
+            }
+            // LRU bookkeeping
+            file.setLastModified(System.currentTimeMillis());
+            return bitmap;
+        } catch (OutOfMemoryError oom) {
+            Log.w(TAG, "Out of memory decoding cached page");
+            return null;
+        } catch (Throwable t) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), t);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores the page asynchronously; the storage format is chosen on the writer thread. The bitmap must not
+     * be modified by the caller afterwards; it is pinned in the {@link BitmapPool} until written, so releasing
+     * it meanwhile is safe.
+     */
+    public void put(String key, Bitmap bitmap) {
+        if (key == null || bitmap == null || bitmap.isRecycled() || maxBytes <= 0) return;
+        BitmapPool pool = BitmapPool.getInstance();
+        pool.pin(bitmap);
+        try {
+            writer.execute(() -> {
+                try {
+                    write(fileFor(key), bitmap);
+                } finally {
+                    pool.unpin(bitmap);
+                }
+                trim();
+            });
+        } catch (RuntimeException e) {
+            pool.unpin(bitmap);
+            Log.w(TAG, "Cache write rejected", e);
+        }
+    }
+
+    /**
+     * Deletes every cached version of one page of the file (all scales and states), e.g. after its PDF raster
+     * changed. Existing entries are deleted right away, so the next lookup misses; writes still queued for the
+     * page are deleted once they are done. Blocking; lists the cache directory.
+     */
+    public void removePage(File pdf, int originalPage) {
+        if (pdf == null) return;
+        String prefix = sha1(pageKey(key(pdf, originalPage, 0f, 0L))) + "-";
+        deleteWithPrefix(prefix);
+        writer.execute(() -> deleteWithPrefix(prefix));
+    }
+
+    /** Deletes every cached page. */
+    public void clear() {
+        writer.execute(() -> {
+            File[] files = dir.listFiles();
+            if (files == null) return;
+            for (File f : files) f.delete();
+        });
+    }
+
+    private void write(File target, Bitmap bitmap) {
+        if (bitmap.isRecycled()) return;
+        if (!dir.exists() && !dir.mkdirs()) return;
+        File tmp = new File(dir, target.getName() + ".tmp");
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)), deflater, 64 * 1024))) {
+            int[] row = new int[width];
+            // Exact formats only: a cached page must be the composite itself, not an approximation of it
+            byte format = bitmap.getConfig() == Bitmap.Config.RGB_565 ? FORMAT_RGB565
+                    : PageColorDepth.isExactGray(bitmap) ? FORMAT_GRAY8 : FORMAT_ARGB;
+            out.writeInt(MAGIC);
+            out.writeByte(format);
+            out.writeInt(width);
+            out.writeInt(height);
+            byte[] raw = new byte[width * bytesPerPixel(format)];
+            for (int y = 0; y < height; y++) {
+                bitmap.getPixels(row, 0, width, 0, y, width, 1);
+                if (format == FORMAT_GRAY8) {
+                    for (int x = 0; x < width; x++) raw[x] = (byte) row[x];
+                } else if (format == FORMAT_RGB565) {
+                    for (int x = 0; x < width; x++) {
+                        int p = row[x];
+                        int v = (p >> 8 & 0xf800) | (p >> 5 & 0x07e0) | (p >> 3 & 0x001f);
+                        raw[2 * x] = (byte) (v >> 8);
+                        raw[2 * x + 1] = (byte) v;
+                    }
+                } else {
+                    ByteBuffer.wrap(raw).asIntBuffer().put(row);
+                }
+                out.write(raw);
+            }
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to write cache entry", t);
+            tmp.delete();
+            return;
+        } finally {
+            deflater.end();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+        }
+    }
+
+    private static int bytesPerPixel(byte format) {
+        return format == FORMAT_GRAY8 ? 1 : format == FORMAT_RGB565 ? 2 : 4;
+    }
+
+    private void trim() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long total = 0;
+        for (File f : files) total += f.length();
+        long budget = maxBytes;
+        if (total <= budget) return;
+        long target = (long) (budget * TRIM_TARGET);
+        // Oldest access first
+        long[] stamps = new long[files.length];
+        for (int i = 0; i < files.length; i++) stamps[i] = files[i].lastModified();
+        Integer[] order = new Integer[files.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> Long.compare(stamps[a], stamps[b]));
+        for (Integer i : order) {
+            if (total <= target) break;
+            long len = files[i].length();
+            if (files[i].delete()) total -= len;
+        }
+        Log.d(TAG, "Trimmed page cache to " + (total / 1024) + " KB");
+    }
+
+    private void deleteWithPrefix(String prefix) {
+        File[] files = dir.listFiles((d, name) -> name.startsWith(prefix));
+        if (files == null) return;
+        for (File f : files) f.delete();
+    }
+
+    /** File names start with the hash of the page, so that {@link #removePage} finds all its entries. */
+    private File fileFor(String key) {
+        return new File(dir, sha1(pageKey(key)) + "-" + sha1(key) + SUFFIX);
+    }
+
+    /** The key without its scale and state: identifies the page of one version of the file. */
+    private static String pageKey(String key) {
+        int state = key.lastIndexOf('|');
+        int scale = state > 0 ? key.lastIndexOf('|', state - 1) : -1;
+        return scale > 0 ? key.substring(0, scale) : key;
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(value.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+}
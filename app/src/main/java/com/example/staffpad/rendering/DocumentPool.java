@@ -0,0 +1,209 @@
+package com.example.staffpad.rendering;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide pool of open PDF documents, so that going back to a piece, or recreating the sheet screen,
+ * does not parse the file again.
+ * <p>
+ * An {@link OpenDocument} holds the PdfRenderer and, if requested and loadable, PDFBox backends of one
+ * version of a file (path, length, modification time). Each {@link PdfDocumentHandle} leases one and gives
+ * it back on close. If PDFBox cannot load the file, the document remembers it and keeps serving PDFBox
+ * requests on PdfRenderer alone. If PDFBox fails later while rendering, the document is retired instead:
+ * it closes when its last lease ends and the next handle opens the file afresh. Documents without leases
+ * stay open, bounded by count and by an estimate of their heap weight, and the least recently released
+ * are closed first.
+ */
+public final class DocumentPool {
+    private static final String TAG = "DocumentPool";
+
+    private static final int MAX_IDLE_DOCUMENTS = 4;
+    private static final int HEAP_FRACTION = 8;
+    private static final long MAX_IDLE_BYTES = 48L * 1024 * 1024;
+    // Parsed PDFBox object trees grow roughly with the file; PdfRenderer keeps its state in native memory
+    private static final long BASE_WEIGHT = 256 * 1024;
+
+    private static volatile DocumentPool INSTANCE;
+
+    private final long maxIdleBytes;
+    private final Map<String, OpenDocument> open = new HashMap<>();
+    private final LinkedHashSet<OpenDocument> idle = new LinkedHashSet<>();
+    private long idleBytes = 0;
+
+    private DocumentPool(long maxIdleBytes) {
+        this.maxIdleBytes = maxIdleBytes;
+    }
+
+    public static DocumentPool getInstance() {
+        if (INSTANCE == null) {
+            synchronized (DocumentPool.class) {
+                if (INSTANCE == null) {
+                    long heapBudget = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+                    INSTANCE = new DocumentPool(Math.min(heapBudget, MAX_IDLE_BYTES));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a new handle on the pooled document for the file, opening it if needed. A pooled document
+     * opened without PDFBox is replaced when PDFBox is wanted, unless loading PDFBox already failed for it;
+     * one with PDFBox also serves PdfRenderer-only callers. Blocking on a miss.
+     * @throws IOException if neither backend can open the file
+     */
+    public PdfDocumentHandle acquire(File file, boolean tryPdfBox) throws IOException {
+        String key = keyFor(file);
+        synchronized (this) {
+            OpenDocument document = open.get(key);
+            if (document != null && document.serves(tryPdfBox)) {
+                lease(document);
+                return new PdfDocumentHandle(document, tryPdfBox);
+            }
+        }
+        // Parse outside the lock; a concurrent open of the same file is resolved below
+        OpenDocument fresh = OpenDocument.open(file, key, tryPdfBox);
+        synchronized (this) {
+            OpenDocument existing = open.get(key);
+            if (existing != null && existing.serves(tryPdfBox)) {
+                fresh.close();
+                lease(existing);
+                return new PdfDocumentHandle(existing, tryPdfBox);
+            }
+            if (existing != null) retire(existing);
+            open.put(key, fresh);
+            lease(fresh);
+            return new PdfDocumentHandle(fresh, tryPdfBox);
+        }
+    }
+
+    /** Ends one lease; an unused document is kept open for reuse unless it was retired. */
+    synchronized void release(OpenDocument document) {
+        if (document.leases <= 0) return;
+        if (--document.leases > 0) return;
+        if (document.retired) {
+            document.close();
+            return;
+        }
+        idle.add(document);
+        idleBytes += document.weight;
+        trim(maxIdleBytes, MAX_IDLE_DOCUMENTS);
+    }
+
+    /** Stops handing out the document; it is closed when its last lease ends. */
+    synchronized void retire(OpenDocument document) {
+        if (document.retired) return;
+        document.retired = true;
+        if (open.get(document.key) == document) open.remove(document.key);
+        if (document.leases == 0) {
+            if (idle.remove(document)) idleBytes -= document.weight;
+            document.close();
+        }
+    }
+
+    /** Closes every document that is not in use, e.g. on memory pressure. */
+    public synchronized void trimIdle() {
+        trim(0, 0);
+    }
+
+    private void lease(OpenDocument document) {
+        if (document.leases++ == 0 && idle.remove(document)) {
+            idleBytes -= document.weight;
+        }
+    }
+
+    private void trim(long maxBytes, int maxCount) {
+        Iterator<OpenDocument> it = idle.iterator();
+        while ((idleBytes > maxBytes || idle.size() > maxCount) && it.hasNext()) {
+            OpenDocument document = it.next();
+            it.remove();
+            idleBytes -= document.weight;
+            if (open.get(document.key) == document) open.remove(document.key);
+            document.close();
+        }
+    }
+
+    /** Identifies one version of a file: canonical path, length and modification time. */
+    static String keyFor(File file) {
+        String path;
+        try {
+            path = file.getCanonicalPath();
+        } catch (IOException e) {
+            path = file.getAbsolutePath();
+        }
+        return path + "|" + file.length() + "|" + file.lastModified();
+    }
+
+    /** The backends of one open file. Immutable apart from the lease bookkeeping guarded by the pool. */
+    static final class OpenDocument {
+        final File file;
+        final String key;
+        final AndroidPageRenderer android; // null if PdfRenderer cannot open the file
+        final PdfBoxPageRenderer pdfBox; // null if not requested or not loadable
+        final boolean pdfBoxFailed; // PDFBox was tried and could not load the file
+        final int pageCount;
+        final long weight;
+        // Page sizes never change for a file version, so all handles share them
+        final Map<Integer, float[]> pageSizes = new ConcurrentHashMap<>();
+        int leases = 0;
+        boolean retired = false;
+
+        private OpenDocument(File file, String key, AndroidPageRenderer android, PdfBoxPageRenderer pdfBox,
+                             boolean pdfBoxFailed) {
+            this.file = file;
+            this.key = key;
+            this.android = android;
+            this.pdfBox = pdfBox;
+            this.pdfBoxFailed = pdfBoxFailed;
+            this.pageCount = pdfBox != null ? pdfBox.getPageCount() : android.getPageCount();
+            this.weight = BASE_WEIGHT + (pdfBox != null ? file.length() : 0);
+        }
+
+        /**
+         * Opens PdfRenderer and, if {@code tryPdfBox}, PDFBox. A PDFBox load failure leaves the document
+         * on PdfRenderer only.
+         */
+        static OpenDocument open(File file, String key, boolean tryPdfBox) throws IOException {
+            AndroidPageRenderer android = null;
+            IOException androidError = null;
+            try {
+                android = AndroidPageRenderer.open(file);
+            } catch (IOException | RuntimeException e) {
+                Log.w(TAG, "PdfRenderer cannot open " + file.getName(), e);
+                androidError = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            PdfBoxPageRenderer pdfBox = null;
+            if (tryPdfBox || android == null) {
+                try {
+                    pdfBox = PdfBoxPageRenderer.open(file);
+                } catch (OutOfMemoryError oom) {
+                    Log.e(TAG, "PDFBox load OOM, using Android PdfRenderer only", oom);
+                } catch (Throwable t) {
+                    Log.e(TAG, "PDFBox load failed, using Android PdfRenderer only", t);
+                }
+            }
+            if (android == null && pdfBox == null) {
+                throw androidError != null ? androidError : new IOException("Cannot open " + file);
+            }
+            return new OpenDocument(file, key, android, pdfBox, tryPdfBox && pdfBox == null);
+        }
+
+        /** True if the document satisfies a request; a failed PDFBox load would only fail again. */
+        boolean serves(boolean tryPdfBox) {
+            return pdfBox != null || pdfBoxFailed || !tryPdfBox;
+        }
+
+        void close() {
+            if (pdfBox != null) pdfBox.close();
+            if (android != null) android.close();
+        }
+    }
+}
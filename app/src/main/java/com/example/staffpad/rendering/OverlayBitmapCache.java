@@ -0,0 +1,182 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.Log;
+import android.util.LruCache;
+
+import java.io.File;
+
+/**
+ * Process-wide cache of decoded layer images (annotation PNGs), already scaled to the page size they are
+ * drawn at, so that turning to an annotated page does not decode and rescale the same file again.
+ * Keys combine path, file modification time, file length and target size; a rewritten file therefore
+ * misses on its own, and {@link #invalidate} drops it explicitly where the app rewrites it. Overlays without
+ * a file (vector annotations) are drawn by a {@link Rasterizer} and keyed by a name and a version instead.
+ * The cache owns its bitmaps and is bounded by bytes; evicted entries go back to the {@link BitmapPool}.
+ */
+public final class OverlayBitmapCache {
+    private static final String TAG = "OverlayBitmapCache";
+
+    private static final int HEAP_FRACTION = 16;
+    private static final int MAX_BYTES = 32 * 1024 * 1024;
+
+    private static volatile OverlayBitmapCache INSTANCE;
+
+    private final LruCache<String, Bitmap> cache;
+
+    /** Draws an overlay that has no image file into a cleared bitmap of the requested size. */
+    public interface Rasterizer {
+        void draw(Canvas canvas, int width, int height);
+    }
+
+    private OverlayBitmapCache(int maxBytes) {
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    // Deferred by the pool while a compositor is still drawing it
+                    BitmapPool.getInstance().release(oldValue);
+                }
+            }
+        };
+    }
+
+    public static OverlayBitmapCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (OverlayBitmapCache.class) {
+                if (INSTANCE == null) {
+                    long heapBudget = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+                    INSTANCE = new OverlayBitmapCache((int) Math.min(heapBudget, MAX_BYTES));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the image at exactly width×height, decoding and scaling it on a miss. The bitmap is pinned
+     * in the {@link BitmapPool}; the caller must {@link BitmapPool#unpin} it when done and must not modify it.
+     * Blocking; returns null if the file is missing or cannot be decoded.
+     */
+    public Bitmap acquire(String path, int width, int height) {
+        if (path == null || path.isEmpty()) return null;
+        File file = new File(path);
+        if (!file.isFile()) return null;
+        String key = key(path, file.lastModified(), file.length(), width, height);
+        Bitmap cached = pinCached(key);
+        if (cached != null) return cached;
+        return pinAndCache(key, decodeScaled(path, width, height));
+    }
+
+    /**
+     * Like {@link #acquire(String, int, int)} for an overlay drawn by {@code rasterizer}, which runs only on a
+     * miss. {@code name} identifies the overlay for {@link #invalidate}; a new {@code version} misses on its own.
+     * Blocking; returns null if the rasterizer fails.
+     */
+    public Bitmap acquire(String name, long version, int width, int height, Rasterizer rasterizer) {
+        if (name == null || rasterizer == null || width <= 0 || height <= 0) return null;
+        String key = key(name, version, 0, width, height);
+        Bitmap cached = pinCached(key);
+        if (cached != null) return cached;
+        Bitmap drawn = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+        try {
+            rasterizer.draw(new Canvas(drawn), width, height);
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to draw overlay: " + name, t);
+            BitmapPool.getInstance().release(drawn);
+            return null;
+        }
+        return pinAndCache(key, drawn);
+    }
+
+    private synchronized Bitmap pinCached(String key) {
+        Bitmap cached = cache.get(key);
+        if (cached == null || cached.isRecycled()) return null;
+        BitmapPool.getInstance().pin(cached);
+        return cached;
+    }
+
+    /** Caches a freshly made bitmap unless another thread got there first; returns the pinned canonical one. */
+    private Bitmap pinAndCache(String key, Bitmap sized) {
+        if (sized == null) return null;
+        BitmapPool pool = BitmapPool.getInstance();
+        synchronized (this) {
+            Bitmap existing = cache.get(key);
+            if (existing != null && !existing.isRecycled()) {
+                pool.release(sized);
+                sized = existing;
+            }
+            // Pin before caching so that an immediate eviction cannot hand it out again
+            pool.pin(sized);
+            if (sized != existing) cache.put(key, sized);
+        }
+        return sized;
+    }
+
+    /** Drops every cached size of the image (or named overlay), e.g. after the file was rewritten. */
+    public void invalidate(String path) {
+        if (path == null) return;
+        String prefix = path + "|";
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) cache.remove(key);
+        }
+    }
+
+    public void clear() {
+        cache.evictAll();
+    }
+
+    private static String key(String path, long modified, long length, int width, int height) {
+        return path + "|" + modified + "|" + length + "|" + width + "x" + height;
+    }
+
+    private static Bitmap decodeScaled(String path, int width, int height) {
+        Bitmap decoded;
+        try {
+            decoded = decodePooled(path);
+        } catch (Throwable t) {
+            Log.w(TAG, "Failed to decode overlay: " + path, t);
+            return null;
+        }
+        if (decoded == null || (decoded.getWidth() == width && decoded.getHeight() == height)) {
+            return decoded;
+        }
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap scaled = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        new Canvas(scaled).drawBitmap(decoded, null, new RectF(0, 0, width, height), new Paint(Paint.FILTER_BITMAP_FLAG));
+        pool.release(decoded);
+        return scaled;
+    }
+
+    /** Decodes an image file into a pooled bitmap. Returns null if the file cannot be decoded. */
+    private static Bitmap decodePooled(String path) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inMutable = true;
+        Bitmap target = BitmapPool.getInstance().acquire(bounds.outWidth, bounds.outHeight, Bitmap.Config.ARGB_8888);
+        opts.inBitmap = target;
+        Bitmap decoded = null;
+        try {
+            decoded = BitmapFactory.decodeFile(path, opts);
+        } catch (IllegalArgumentException e) {
+            // inBitmap not reusable for this image
+            return BitmapFactory.decodeFile(path);
+        } finally {
+            // Unless the decode landed in it, the pooled bitmap goes back, also when decoding failed or threw
+            if (decoded != target) BitmapPool.getInstance().release(target);
+        }
+        return decoded;
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.example.staffpad.database.PageLayerEntity;
+import com.example.staffpad.database.PageSettingsEntity;
+
+import java.util.List;
+
+/**
+ * Process-wide in-memory cache of composited page bitmaps.
+ * Entries are keyed by sheet, original page index, render scale and a hash of the page state
+ * (virtual page settings + active layers), and the cache is bounded by bytes rather than entry count.
+ * The cache owns its bitmaps: entries that are evicted or removed go back to the {@link BitmapPool}.
+ * Lookups hand pages out already pinned, so an eviction by another thread never recycles a page in use.
+ */
+public final class PageBitmapCache {
+    private static final String TAG = "PageBitmapCache";
+
+    // Never use more than this share of the heap for cached pages
+    private static final int HEAP_FRACTION = 6;
+    private static final int MAX_BYTES = 192 * 1024 * 1024;
+
+    private static volatile PageBitmapCache INSTANCE;
+
+    private final LruCache<String, Bitmap> cache;
+
+    private PageBitmapCache(int maxBytes) {
+        cache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, String key, Bitmap oldValue, Bitmap newValue) {
+                if (oldValue != newValue) {
+                    // Deferred by the pool while the page is still displayed
+                    BitmapPool.getInstance().release(oldValue);
+                }
+            }
+        };
+        Log.d(TAG, "Page cache budget: " + (maxBytes / (1024 * 1024)) + " MB");
+    }
+
+    public static PageBitmapCache getInstance() {
+        if (INSTANCE == null) {
+            synchronized (PageBitmapCache.class) {
+                if (INSTANCE == null) {
+                    long heapBudget = Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+                    INSTANCE = new PageBitmapCache((int) Math.min(heapBudget, MAX_BYTES));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the page cached under the key, pinned in the {@link BitmapPool}, or null. The pin is taken under
+     * the cache lock, so a concurrent {@link #putPinned} cannot evict the page and hand it out again before the
+     * caller holds it. The caller must {@link BitmapPool#unpin} it when done and must not modify it.
+     */
+    public synchronized Bitmap getPinned(String key) {
+        Bitmap bmp = get(key);
+        if (bmp != null) BitmapPool.getInstance().pin(bmp);
+        return bmp;
+    }
+
+    /**
+     * Caches the bitmap and takes ownership of it, unless an equivalent page is already cached under the key.
+     * @return the bitmap cached under the key, pinned like {@link #getPinned}; callers must use it instead of
+     *         the one passed in
+     */
+    public synchronized Bitmap putPinned(String key, Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return null;
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap existing = get(key);
+        if (existing != null && existing != bitmap) {
+            pool.release(bitmap);
+            bitmap = existing;
+        }
+        // Pin before caching so that an immediate eviction cannot hand it out again
+        pool.pin(bitmap);
+        if (key != null && bitmap != existing) cache.put(key, bitmap);
+        return bitmap;
+    }
+
+    private Bitmap get(String key) {
+        if (key == null) return null;
+        Bitmap bmp = cache.get(key);
+        if (bmp != null && bmp.isRecycled()) {
+            cache.remove(key);
+            return null;
+        }
+        return bmp;
+    }
+
+    /** Drop every cached page of the given sheet (e.g. after the PDF or page map changed). */
+    public synchronized void removeSheet(long sheetId) {
+        String prefix = sheetId + ":";
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) cache.remove(key);
+        }
+    }
+
+    /** Drop every cached composite of one page, e.g. after its PDF raster changed. */
+    public synchronized void removePage(long sheetId, int originalPage) {
+        String prefix = sheetId + ":" + originalPage + ":";
+        for (String key : cache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) cache.remove(key);
+        }
+    }
+
+    public synchronized void clear() {
+        cache.evictAll();
+    }
+
+    /**
+     * Builds a cache key for a rendered page.
+     * @param originalPage page index in the PDF file (after logical-to-original mapping)
+     * @param stateHash value returned by {@link #stateHash}
+     */
+    public static String key(long sheetId, int originalPage, float scale, long stateHash) {
+        return sheetId + ":" + originalPage + ":" + Math.round(scale * 1000f) + ":" + Long.toHexString(stateHash);
+    }
+
+    /**
+     * Hash of everything that influences the composited output of a page besides the PDF raster itself.
+     * Annotation overlays are drawn above the page rather than into it, so they are not part of the state.
+     */
+    public static long stateHash(PageSettingsEntity settings, List<PageLayerEntity> layers) {
+        long h = 1125899906842597L;
+        if (settings != null) {
+            h = mix(h, Float.floatToIntBits(settings.getCropLeft()));
+            h = mix(h, Float.floatToIntBits(settings.getCropTop()));
+            h = mix(h, Float.floatToIntBits(settings.getCropRight()));
+            h = mix(h, Float.floatToIntBits(settings.getCropBottom()));
+            h = mix(h, Float.floatToIntBits(settings.getRotation()));
+            h = mix(h, Float.floatToIntBits(settings.getBrightness()));
+            h = mix(h, Float.floatToIntBits(settings.getContrast()));
+            h = mix(h, settings.getModifiedAt());
+        }
+        if (layers != null) {
+            for (PageLayerEntity layer : layers) {
+                if (layer == null || !layer.isActive() || layer.isAnnotationOverlay()) continue;
+                h = mix(h, layer.getId());
+                h = mix(h, layer.getOrderIndex());
+                h = mix(h, layer.getModifiedAt());
+                h = mix(h, layer.getLayerImagePath() != null ? layer.getLayerImagePath().hashCode() : 0);
+                h = mix(h, Float.floatToIntBits(layer.getCropLeft()));
+                h = mix(h, Float.floatToIntBits(layer.getCropTop()));
+                h = mix(h, Float.floatToIntBits(layer.getCropRight()));
+                h = mix(h, Float.floatToIntBits(layer.getCropBottom()));
+                h = mix(h, Float.floatToIntBits(layer.getRotation()));
+                h = mix(h, Float.floatToIntBits(layer.getBrightness()));
+                h = mix(h, Float.floatToIntBits(layer.getContrast()));
+            }
+        }
+        return h;
+    }
+
+    /** Hash of the annotation overlays drawn above a page; complements {@link #stateHash}. */
+    public static long overlayHash(List<PageLayerEntity> layers) {
+        long h = 1125899906842597L;
+        if (layers != null) {
+            for (PageLayerEntity layer : layers) {
+                if (layer == null || !layer.isActive() || !layer.isAnnotationOverlay()) continue;
+                h = mix(h, layer.getId());
+                h = mix(h, layer.getOrderIndex());
+                h = mix(h, layer.getModifiedAt());
+                h = mix(h, layer.getLayerImagePath() != null ? layer.getLayerImagePath().hashCode() : 0);
+            }
+        }
+        return h;
+    }
+
+    private static long mix(long h, long v) {
+        return 31L * h + (v ^ (v >>> 32));
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Reduced-depth storage for monochrome pages.
+ * <p>
+ * Sheet music is almost always black on white, so a page whose pixels are all opaque gray loses nothing
+ * visible when held as RGB_565 (2 bytes per pixel) instead of ARGB_8888 (4 bytes). Android has no drawable
+ * 8-bit gray config, so RGB_565 is the in-memory form. Scans and JPEG-backed pages carry some chroma noise,
+ * so "gray" allows a small channel difference, and the decision is taken on a sampled grid rather than on
+ * every pixel. A missed thin colored stroke only loses precision, as RGB_565 still holds color; nothing
+ * here drops chroma, and {@link #isExactGray} is the full check for storing a page as gray. Compositing
+ * still works on ARGB copies: everything that draws a page into a new buffer acquires ARGB_8888, and only
+ * finished pages are reduced.
+ */
+public final class PageColorDepth {
+    // Largest channel difference that still counts as gray
+    private static final int TOLERANCE = 8;
+    // Pixels sampled per page, spread over an even grid
+    private static final int MAX_SAMPLES = 256 * 1024;
+
+    private PageColorDepth() {}
+
+    /**
+     * True if the sampled pixels are opaque and within {@link #TOLERANCE} of gray. Only decides whether a page
+     * is held as RGB_565; RGB_565 pages were only reduced because they are monochrome.
+     */
+    public static boolean isMonochrome(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return false;
+        if (bitmap.getConfig() == Bitmap.Config.RGB_565) return true;
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int step = Math.max(1, (int) Math.sqrt((double) width * height / MAX_SAMPLES));
+        int[] row = new int[width];
+        for (int y = 0; y < height; y += step) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x += step) {
+                if (!isNearGray(row[x])) return false;
+            }
+        }
+        return true;
+    }
+
+    /** True if the ARGB pixel is opaque and its channels differ by at most {@link #TOLERANCE}. */
+    static boolean isNearGray(int argb) {
+        if ((argb >>> 24) != 0xff) return false;
+        int r = (argb >> 16) & 0xff;
+        int g = (argb >> 8) & 0xff;
+        int b = argb & 0xff;
+        return Math.abs(r - g) <= TOLERANCE && Math.abs(g - b) <= TOLERANCE;
+    }
+
+    /**
+     * True if every pixel is opaque with equal channels, so the page can be stored as 8-bit gray without loss.
+     * Scans the whole page but stops at the first pixel that is not gray. RGB_565 pages are not exact gray.
+     */
+    public static boolean isExactGray(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || bitmap.getConfig() != Bitmap.Config.ARGB_8888) return false;
+        int width = bitmap.getWidth();
+        int[] row = new int[width];
+        for (int y = 0; y < bitmap.getHeight(); y++) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int p = row[x];
+                int r = (p >> 16) & 0xff;
+                if ((p >>> 24) != 0xff || r != ((p >> 8) & 0xff) || r != (p & 0xff)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns an RGB_565 copy of a monochrome ARGB page and releases the original to the {@link BitmapPool};
+     * returns the page itself if it has color or transparency.
+     */
+    public static Bitmap reduceIfMonochrome(Bitmap page) {
+        return isMonochrome(page) ? reduce(page) : page;
+    }
+
+    /**
+     * Returns an RGB_565 copy of an ARGB page already found to be monochrome, releasing the original to the
+     * {@link BitmapPool}; returns the page itself if it is not ARGB_8888 or memory runs out.
+     */
+    public static Bitmap reduce(Bitmap page) {
+        if (page == null || page.getConfig() != Bitmap.Config.ARGB_8888) {
+            return page;
+        }
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap reduced;
+        try {
+            reduced = pool.acquire(page.getWidth(), page.getHeight(), Bitmap.Config.RGB_565);
+        } catch (OutOfMemoryError oom) {
+            return page;
+        }
+        // Dithering would add colored noise to gray levels that 565 cannot represent exactly
+        Paint paint = new Paint();
+        paint.setDither(false);
+        new Canvas(reduced).drawBitmap(page, 0, 0, paint);
+        pool.release(page);
+        return reduced;
+    }
+}
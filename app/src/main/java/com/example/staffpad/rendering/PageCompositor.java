@@ -0,0 +1,202 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.RectF;
+
+import com.example.staffpad.database.AnnotationEntity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Composes a page from its base raster, geometry (rotation, crop), brightness/contrast, overlay images and
+ * vector annotations in a single Canvas pass into one pooled bitmap.
+ * <p>
+ * Operations are recorded in order, with the same meaning as applying them one by one to an intermediate
+ * bitmap: a rotation or crop transforms everything recorded so far, an adjustment recolors it, and an
+ * overlay is stretched over the page as it is at that point. Nothing is rasterized until {@link #draw()},
+ * which draws each item once with its accumulated matrix, clip and {@link ColorMatrixColorFilter}; vector
+ * annotations are drawn at output resolution in a layer of their own.
+ * Adjustments are affine per channel, so recoloring the items before blending matches recoloring the
+ * blended page (up to intermediate clamping).
+ */
+public final class PageCompositor {
+    private final List<Item> items = new ArrayList<>();
+    private int width;
+    private int height;
+
+    /** The base is only read; it stays owned by the caller. */
+    public PageCompositor(Bitmap base) {
+        width = base.getWidth();
+        height = base.getHeight();
+        items.add(new Item(base, null, null, width, height));
+    }
+
+    /** Current page width in pixels, i.e. the width of the bitmap {@link #draw()} would return. */
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Rotates the page about its center; the page grows to the rotated bounds like Bitmap.createBitmap. */
+    public PageCompositor rotate(float degrees) {
+        if (degrees == 0f) return this;
+        Matrix rotation = new Matrix();
+        rotation.postRotate(degrees);
+        RectF bounds = new RectF(0, 0, width, height);
+        rotation.mapRect(bounds);
+        rotation.postTranslate(-bounds.left, -bounds.top);
+        width = Math.max(1, Math.round(bounds.width()));
+        height = Math.max(1, Math.round(bounds.height()));
+        for (Item item : items) {
+            item.matrix.postConcat(rotation);
+            item.clip.transform(rotation);
+        }
+        return this;
+    }
+
+    /** Crops to a rectangle given as fractions (0..1) of the current page size. */
+    public PageCompositor crop(float left, float top, float right, float bottom) {
+        int l = (int) (left * width);
+        int t = (int) (top * height);
+        int w = (int) (right * width) - l;
+        int h = (int) (bottom * height) - t;
+        l = Math.max(0, Math.min(l, width - 1));
+        t = Math.max(0, Math.min(t, height - 1));
+        w = Math.max(1, Math.min(w, width - l));
+        h = Math.max(1, Math.min(h, height - t));
+        if (l == 0 && t == 0 && w == width && h == height) return this;
+        width = w;
+        height = h;
+        Path bounds = new Path();
+        bounds.addRect(0, 0, w, h, Path.Direction.CW);
+        for (Item item : items) {
+            item.matrix.postTranslate(-l, -t);
+            item.clip.offset(-l, -t);
+            item.clip.op(bounds, Path.Op.INTERSECT);
+        }
+        return this;
+    }
+
+    /** Brightness/contrast of everything recorded so far: (v - 128) * contrast + 128 + brightness. */
+    public PageCompositor adjust(float brightness, float contrast) {
+        if (brightness == 0f && Math.abs(contrast - 1f) <= 1e-3) return this;
+        ColorMatrix adjustment = adjustmentMatrix(brightness, contrast);
+        for (Item item : items) {
+            item.color.postConcat(adjustment);
+            item.recolored = true;
+        }
+        return this;
+    }
+
+    /** Stretches the image file over the current page. Loaded through {@link OverlayBitmapCache} while drawing. */
+    public PageCompositor overlay(String path) {
+        if (path != null && !path.isEmpty()) {
+            items.add(new Item(null, path, null, width, height));
+        }
+        return this;
+    }
+
+    /** Draws vector annotation ops over the current page; the list must not change until {@link #draw()}. */
+    public PageCompositor annotations(List<AnnotationEntity> ops) {
+        if (ops != null && !ops.isEmpty()) {
+            items.add(new Item(null, null, ops, width, height));
+        }
+        return this;
+    }
+
+    /** Draws all items into a new pooled ARGB_8888 bitmap owned by the caller. */
+    public Bitmap draw() {
+        BitmapPool pool = BitmapPool.getInstance();
+        Bitmap out = pool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(out);
+        for (Item item : items) {
+            if (item.ops != null) {
+                drawAnnotations(canvas, item);
+                continue;
+            }
+            Bitmap bitmap = item.bitmap;
+            if (bitmap == null) {
+                // Decoded at the size it is drawn at, so the common case is a 1:1 blit
+                bitmap = OverlayBitmapCache.getInstance().acquire(item.path, item.frameWidth, item.frameHeight);
+                if (bitmap == null) continue;
+            }
+            Matrix matrix = new Matrix();
+            matrix.setRectToRect(new RectF(0, 0, bitmap.getWidth(), bitmap.getHeight()),
+                    new RectF(0, 0, item.frameWidth, item.frameHeight), Matrix.ScaleToFit.FILL);
+            matrix.postConcat(item.matrix);
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            if (item.recolored) paint.setColorFilter(new ColorMatrixColorFilter(item.color));
+            canvas.save();
+            canvas.clipPath(item.clip);
+            canvas.drawBitmap(bitmap, matrix, paint);
+            canvas.restore();
+            if (bitmap != item.bitmap) pool.unpin(bitmap);
+        }
+        return out;
+    }
+
+    private static void drawAnnotations(Canvas canvas, Item item) {
+        canvas.save();
+        canvas.clipPath(item.clip);
+        // Eraser ops clear within this layer only, not the page below
+        Paint layerPaint = null;
+        if (item.recolored) {
+            layerPaint = new Paint();
+            layerPaint.setColorFilter(new ColorMatrixColorFilter(item.color));
+        }
+        canvas.saveLayer(null, layerPaint);
+        canvas.concat(item.matrix);
+        AnnotationRenderer.draw(canvas, item.ops, item.frameWidth, item.frameHeight);
+        canvas.restore();
+        canvas.restore();
+    }
+
+    /** Color matrix for (v - 128) * contrast + 128 + brightness on each color channel. */
+    public static ColorMatrix adjustmentMatrix(float brightness, float contrast) {
+        float offset = brightness + 128f * (1f - contrast);
+        return new ColorMatrix(new float[] {
+                contrast, 0, 0, 0, offset,
+                0, contrast, 0, 0, offset,
+                0, 0, contrast, 0, offset,
+                0, 0, 0, 1, 0
+        });
+    }
+
+    public static ColorFilter adjustmentFilter(float brightness, float contrast) {
+        return new ColorMatrixColorFilter(adjustmentMatrix(brightness, contrast));
+    }
+
+    private static final class Item {
+        final Bitmap bitmap;
+        final String path;
+        final List<AnnotationEntity> ops;
+        // Page size when the item was recorded; the bitmap is stretched to it
+        final int frameWidth;
+        final int frameHeight;
+        // Frame to output pixels, and the part of the output the item may still cover
+        final Matrix matrix = new Matrix();
+        final Path clip = new Path();
+        final ColorMatrix color = new ColorMatrix();
+        boolean recolored;
+
+        Item(Bitmap bitmap, String path, List<AnnotationEntity> ops, int frameWidth, int frameHeight) {
+            this.bitmap = bitmap;
+            this.path = path;
+            this.ops = ops;
+            this.frameWidth = frameWidth;
+            this.frameHeight = frameHeight;
+            clip.addRect(0, 0, frameWidth, frameHeight, Path.Direction.CW);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.staffpad.rendering;
+
+import com.example.staffpad.database.SheetEntity;
+
+import org.json.JSONArray;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps logical pages (what the user pages through) to original PDF page indices, honoring the sheet's
+ * custom page order and deleted pages. Immutable.
+ */
+public final class PageMapping {
+    private final List<Integer> map; // null = identity
+    private final int originalCount;
+
+    private PageMapping(List<Integer> map, int originalCount) {
+        this.map = map;
+        this.originalCount = originalCount;
+    }
+
+    public static PageMapping identity(int originalCount) {
+        return new PageMapping(null, originalCount);
+    }
+
+    /** Builds the mapping from the sheet's page order and deleted pages; falls back to identity if unusable. */
+    public static PageMapping forSheet(SheetEntity sheet, int originalCount) {
+        if (sheet == null) return identity(originalCount);
+        try {
+            Set<Integer> deleted = new HashSet<>();
+            if (sheet.getDeletedPagesJson() != null && !sheet.getDeletedPagesJson().isEmpty()) {
+                JSONArray del = new JSONArray(sheet.getDeletedPagesJson());
+                for (int i = 0; i < del.length(); i++) {
+                    deleted.add(del.getInt(i));
+                }
+            }
+            List<Integer> map = new ArrayList<>();
+            if (sheet.getPageOrderJson() != null && !sheet.getPageOrderJson().isEmpty()) {
+                JSONArray arr = new JSONArray(sheet.getPageOrderJson());
+                for (int i = 0; i < arr.length(); i++) {
+                    int orig = arr.getInt(i);
+                    if (!deleted.contains(orig) && orig >= 0 && orig < originalCount) {
+                        map.add(orig);
+                    }
+                }
+            } else {
+                for (int orig = 0; orig < originalCount; orig++) {
+                    if (!deleted.contains(orig)) map.add(orig);
+                }
+            }
+            // Fallback to identity if empty
+            return map.isEmpty() ? identity(originalCount) : new PageMapping(Collections.unmodifiableList(map), originalCount);
+        } catch (Throwable ignore) {
+            return identity(originalCount);
+        }
+    }
+
+    /** Original page index for a logical page; out-of-range logical pages map to the first page. */
+    public int toOriginal(int logicalIndex) {
+        if (map == null) return logicalIndex;
+        if (logicalIndex < 0 || logicalIndex >= map.size()) return 0;
+        return map.get(logicalIndex);
+    }
+
+    /** Number of logical pages. */
+    public int size() {
+        return map != null ? map.size() : originalCount;
+    }
+
+    public int getOriginalCount() {
+        return originalCount;
+    }
+}
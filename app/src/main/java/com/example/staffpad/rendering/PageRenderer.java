@@ -0,0 +1,39 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * One PDF rendering backend for one open document. Page indices are original PDF page indices;
+ * logical pages (after rearranging and deleting) are mapped by {@link PageMapping}.
+ * Implementations are safe to call from several worker threads.
+ */
+public interface PageRenderer extends Closeable {
+
+    RendererSelector.Backend getBackend();
+
+    int getPageCount();
+
+    /** Page size in PDF points with the page rotation applied. */
+    float[] getPageSize(int pageIndex) throws IOException;
+
+    /**
+     * Renders a full page at the given scale (1.0 = one pixel per PDF point) on a white background.
+     * The bitmap comes from the {@link BitmapPool} and belongs to the caller.
+     */
+    Bitmap render(int pageIndex, float scale) throws IOException;
+
+    /**
+     * Renders only the part of the page that lands inside a width×height bitmap. {@code transform} maps
+     * page coordinates (PDF points, page rotation applied) to bitmap pixels and may rotate, so crop and
+     * rotation are rasterized directly at the target resolution instead of being cut out of a full render.
+     * The bitmap is pooled and belongs to the caller.
+     */
+    Bitmap render(int pageIndex, Matrix transform, int width, int height) throws IOException;
+
+    @Override
+    void close();
+}
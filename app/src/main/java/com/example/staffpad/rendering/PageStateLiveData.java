@@ -0,0 +1,89 @@
+package com.example.staffpad.rendering;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
+
+import com.example.staffpad.database.PageLayerEntity;
+import com.example.staffpad.database.PageSettingsEntity;
+
+import java.util.List;
+
+/**
+ * A page's active layers and page settings combined into one stream.
+ * <p>
+ * Room re-runs both queries whenever either table is written, so observing them separately composites a
+ * page twice per change, and the two results can reach the screen in either order. Here the first state is
+ * emitted once both sources have delivered; after that, emissions are debounced on the main thread and a
+ * state with the same {@link PageBitmapCache#stateHash} and {@link PageBitmapCache#overlayHash} as the
+ * previous one is dropped. One database change therefore produces one composite.
+ */
+public final class PageStateLiveData extends MediatorLiveData<PageStateLiveData.PageState> {
+    private static final long DEBOUNCE_MS = 50;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable emit = this::emitIfChanged;
+    private List<PageLayerEntity> layers;
+    private PageSettingsEntity settings;
+    private boolean haveLayers = false;
+    private boolean haveSettings = false;
+    private boolean emitted = false;
+    private long lastHash;
+
+    public PageStateLiveData(LiveData<List<PageLayerEntity>> layersSource, LiveData<PageSettingsEntity> settingsSource) {
+        addSource(layersSource, value -> {
+            layers = value;
+            haveLayers = true;
+            schedule();
+        });
+        addSource(settingsSource, value -> {
+            settings = value;
+            haveSettings = true;
+            schedule();
+        });
+    }
+
+    private void schedule() {
+        if (!haveLayers || !haveSettings) return;
+        handler.removeCallbacks(emit);
+        handler.postDelayed(emit, DEBOUNCE_MS);
+    }
+
+    private void emitIfChanged() {
+        long hash = 31 * PageBitmapCache.stateHash(settings, layers) + PageBitmapCache.overlayHash(layers);
+        if (emitted && hash == lastHash) return;
+        emitted = true;
+        lastHash = hash;
+        setValue(new PageState(settings, layers));
+    }
+
+    /**
+     * Emits the current state again even if it equals the last one, e.g. after a cached stage of the page was
+     * dropped. Debounced like source changes, so it coalesces with a database update arriving at the same time.
+     * Main thread only.
+     */
+    public void invalidate() {
+        emitted = false;
+        schedule();
+    }
+
+    @Override
+    protected void onInactive() {
+        super.onInactive();
+        // Sources re-deliver when observed again; the duplicate check absorbs the repeat
+        handler.removeCallbacks(emit);
+    }
+
+    /** Settings (may be null) and active layers of a page at one point in time. */
+    public static final class PageState {
+        public final PageSettingsEntity settings;
+        public final List<PageLayerEntity> layers;
+
+        PageState(PageSettingsEntity settings, List<PageLayerEntity> layers) {
+            this.settings = settings;
+            this.layers = layers;
+        }
+    }
+}
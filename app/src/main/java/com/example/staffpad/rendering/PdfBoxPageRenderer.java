@@ -0,0 +1,135 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.Log;
+
+import com.tom_roush.pdfbox.io.MemoryUsageSetting;
+import com.tom_roush.pdfbox.pdmodel.PDDocument;
+import com.tom_roush.pdfbox.pdmodel.PDPage;
+import com.tom_roush.pdfbox.pdmodel.common.PDRectangle;
+import com.tom_roush.pdfbox.rendering.PDFRenderer;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * {@link PageRenderer} on PDFBox. PDFBox documents are not thread-safe, so renders are serialized.
+ */
+public final class PdfBoxPageRenderer implements PageRenderer {
+    private static final String TAG = "PdfBoxPageRenderer";
+
+    private final Object lock = new Object();
+    private PDDocument document;
+    private PDFRenderer renderer;
+    private final int pageCount;
+
+    private PdfBoxPageRenderer(PDDocument document) {
+        this.document = document;
+        this.renderer = new PDFRenderer(document);
+        this.pageCount = document.getNumberOfPages();
+    }
+
+    /** Loads the document, buffering into temp files rather than the heap. */
+    public static PdfBoxPageRenderer open(File file) throws IOException {
+        PDDocument document = PDDocument.load(file, MemoryUsageSetting.setupTempFileOnly());
+        try {
+            return new PdfBoxPageRenderer(document);
+        } catch (RuntimeException e) {
+            try { document.close(); } catch (IOException ignore) {}
+            throw e;
+        }
+    }
+
+    @Override
+    public RendererSelector.Backend getBackend() {
+        return RendererSelector.Backend.PDFBOX;
+    }
+
+    @Override
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    @Override
+    public float[] getPageSize(int pageIndex) throws IOException {
+        synchronized (lock) {
+            PDPage page = requireDocument().getPage(pageIndex);
+            PDRectangle cropBox = page.getCropBox();
+            int rotation = page.getRotation();
+            return (rotation == 90 || rotation == 270)
+                    ? new float[] { cropBox.getHeight(), cropBox.getWidth() }
+                    : new float[] { cropBox.getWidth(), cropBox.getHeight() };
+        }
+    }
+
+    /** Same output size and white background as PDFRenderer.renderImage, but into a pooled bitmap. */
+    @Override
+    public Bitmap render(int pageIndex, float scale) throws IOException {
+        synchronized (lock) {
+            PDDocument doc = requireDocument();
+            PDRectangle cropBox = doc.getPage(pageIndex).getCropBox();
+            int width = (int) Math.max(Math.floor(cropBox.getWidth() * scale), 1);
+            int height = (int) Math.max(Math.floor(cropBox.getHeight() * scale), 1);
+            int rotation = doc.getPage(pageIndex).getRotation();
+            if (rotation == 90 || rotation == 270) {
+                int tmp = width;
+                width = height;
+                height = tmp;
+            }
+            Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+            try {
+                bitmap.eraseColor(Color.WHITE);
+                renderer.renderPageToGraphics(pageIndex, new Paint(), new Canvas(bitmap), scale);
+                return bitmap;
+            } catch (IOException | RuntimeException e) {
+                BitmapPool.getInstance().release(bitmap);
+                Log.w(TAG, "Canvas render failed, retrying with renderImage", e);
+                return renderer.renderImage(pageIndex, scale);
+            }
+        }
+    }
+
+    /** The canvas carries the transform; PDFBox then draws the page at scale 1 in page coordinates. */
+    @Override
+    public Bitmap render(int pageIndex, Matrix transform, int width, int height) throws IOException {
+        synchronized (lock) {
+            requireDocument();
+            Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+            try {
+                bitmap.eraseColor(Color.WHITE);
+                Canvas canvas = new Canvas(bitmap);
+                canvas.clipRect(0, 0, width, height);
+                canvas.concat(transform);
+                renderer.renderPageToGraphics(pageIndex, new Paint(), canvas, 1f);
+                return bitmap;
+            } catch (IOException | RuntimeException e) {
+                BitmapPool.getInstance().release(bitmap);
+                throw e;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (document != null) {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    Log.e(TAG, "Error closing document", e);
+                }
+            }
+            document = null;
+            renderer = null;
+        }
+    }
+
+    private PDDocument requireDocument() throws IOException {
+        if (document == null) throw new IOException("Document closed");
+        return document;
+    }
+}
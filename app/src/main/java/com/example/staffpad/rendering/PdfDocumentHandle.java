@@ -0,0 +1,272 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Matrix;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * An open PDF together with everything needed to render its pages: the active backend (PDFBox or
+ * Android PdfRenderer), the automatic fallback from PDFBox to PdfRenderer, the logical page mapping,
+ * cached page sizes and render metrics.
+ * <p>
+ * UI code asks for "logical page N at W×H" ({@link #renderLogicalPage}) or for an original page at a scale
+ * ({@link #render}); it never touches a backend directly. PdfRenderer stays open next to PDFBox because
+ * previews, page sizes and the tile view use it, and it is the fallback when PDFBox fails. A PDFBox
+ * failure switches the handle to PdfRenderer for good and is reported to the {@link FallbackListener}.
+ * <p>
+ * The open backends belong to a {@link DocumentPool} document shared by all handles on the same file; the
+ * mapping, listener, metrics and backend choice are per handle. Closing a handle returns its lease.
+ */
+public final class PdfDocumentHandle implements Closeable {
+    private static final String TAG = "PdfDocumentHandle";
+
+    /** Notified once when PDFBox fails and the handle switches to PdfRenderer. */
+    public interface FallbackListener {
+        void onFallback(Throwable cause);
+    }
+
+    private final DocumentPool.OpenDocument document;
+    private final AndroidPageRenderer android; // null if PdfRenderer cannot open the file
+    private volatile PdfBoxPageRenderer pdfBox; // null when PdfRenderer is the active backend
+    private volatile PageMapping mapping;
+    private final RenderMetrics metrics = new RenderMetrics();
+    private volatile FallbackListener fallbackListener;
+    private boolean closed = false;
+
+    PdfDocumentHandle(DocumentPool.OpenDocument document, boolean usePdfBox) {
+        this.document = document;
+        this.android = document.android;
+        this.pdfBox = usePdfBox || document.android == null ? document.pdfBox : null;
+        this.mapping = PageMapping.identity(document.pageCount);
+    }
+
+    /**
+     * Opens the document through the {@link DocumentPool}, so a recently used file is not parsed again.
+     * PDFBox is used only if {@code tryPdfBox}; if loading it fails the handle starts on PdfRenderer.
+     * @throws IOException if neither backend can open the file
+     */
+    public static PdfDocumentHandle open(File file, boolean tryPdfBox) throws IOException {
+        return DocumentPool.getInstance().acquire(file, tryPdfBox);
+    }
+
+    public File getFile() {
+        return document.file;
+    }
+
+    public void setFallbackListener(FallbackListener listener) {
+        fallbackListener = listener;
+    }
+
+    /** Backend currently used by {@link #render}. */
+    public RendererSelector.Backend getBackend() {
+        return pdfBox != null ? RendererSelector.Backend.PDFBOX : RendererSelector.Backend.ANDROID;
+    }
+
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /** Number of pages in the PDF file. */
+    public int getPageCount() {
+        return document.pageCount;
+    }
+
+    public PageMapping getMapping() {
+        return mapping;
+    }
+
+    public void setMapping(PageMapping mapping) {
+        this.mapping = mapping != null ? mapping : PageMapping.identity(getPageCount());
+    }
+
+    /** Number of pages the user pages through. */
+    public int getLogicalPageCount() {
+        return mapping.size();
+    }
+
+    public int toOriginal(int logicalIndex) {
+        return mapping.toOriginal(logicalIndex);
+    }
+
+    /** PdfRenderer session of this document, or null if PdfRenderer cannot open it. */
+    public PdfRendererSession getAndroidSession() {
+        return android != null ? android.getSession() : null;
+    }
+
+    /** Page size in PDF points with rotation applied, or null if the page cannot be opened. */
+    public float[] getPageSize(int pageIndex) {
+        float[] size = document.pageSizes.get(pageIndex);
+        if (size != null) return size;
+        // PdfRenderer's page size is what the tile view maps against, so prefer it
+        PageRenderer source = android != null ? android : pdfBox;
+        if (source == null) return null;
+        try {
+            size = source.getPageSize(clampPage(pageIndex));
+            document.pageSizes.put(pageIndex, size);
+            return size;
+        } catch (Throwable t) {
+            Log.w(TAG, "Could not read size of page " + pageIndex, t);
+            return null;
+        }
+    }
+
+    /** Scale at which the page fits into width×height pixels; 0 if the page size is unknown. */
+    public float fitScale(int pageIndex, int width, int height) {
+        float[] size = getPageSize(pageIndex);
+        if (size == null || size[0] <= 0f || size[1] <= 0f || width <= 0 || height <= 0) return 0f;
+        return Math.min(width / size[0], height / size[1]);
+    }
+
+    /** Renders a logical page to fit width×height pixels. Blocking; returns null if both backends fail. */
+    public Bitmap renderLogicalPage(int logicalIndex, int width, int height) {
+        int original = toOriginal(logicalIndex);
+        float scale = fitScale(original, width, height);
+        return scale > 0f ? render(original, scale) : null;
+    }
+
+    /**
+     * Renders an original page with the active backend, falling back to PdfRenderer if PDFBox fails
+     * or runs out of memory. Blocking; returns a pooled bitmap, or null if both backends fail.
+     */
+    public Bitmap render(int pageIndex, float scale) {
+        int index = clampPage(pageIndex);
+        PdfBoxPageRenderer box = pdfBox;
+        if (box != null) {
+            try {
+                return timed(box, index, scale);
+            } catch (OutOfMemoryError oom) {
+                Log.e(TAG, "PDFBox render OOM, switching to Android PdfRenderer", oom);
+                fallBack(box, oom);
+            } catch (Throwable t) {
+                Log.e(TAG, "PDFBox render failed, falling back to Android PdfRenderer", t);
+                fallBack(box, t);
+            }
+        }
+        return renderWithAndroid(index, scale);
+    }
+
+    /**
+     * Renders the part of an original page that {@code transform} maps into width×height pixels (see
+     * {@link PageRenderer#render(int, Matrix, int, int)}), with the same fallback as {@link #render(int, float)}.
+     */
+    public Bitmap renderRegion(int pageIndex, Matrix transform, int width, int height) {
+        int index = clampPage(pageIndex);
+        PdfBoxPageRenderer box = pdfBox;
+        if (box != null) {
+            try {
+                return timedRegion(box, index, transform, width, height);
+            } catch (OutOfMemoryError oom) {
+                Log.e(TAG, "PDFBox render OOM, switching to Android PdfRenderer", oom);
+                fallBack(box, oom);
+            } catch (Throwable t) {
+                Log.e(TAG, "PDFBox render failed, falling back to Android PdfRenderer", t);
+                fallBack(box, t);
+            }
+        }
+        return renderRegionWithAndroid(index, transform, width, height);
+    }
+
+    /** Region render with PdfRenderer regardless of the active backend (e.g. for quick previews). */
+    public Bitmap renderRegionWithAndroid(int pageIndex, Matrix transform, int width, int height) {
+        if (android == null) return null;
+        try {
+            return timedRegion(android, clampPage(pageIndex), transform, width, height);
+        } catch (Throwable t) {
+            metrics.recordFailure();
+            Log.e(TAG, "Android PdfRenderer failed", t);
+            return null;
+        }
+    }
+
+    /** Renders with PdfRenderer regardless of the active backend (e.g. for quick previews). */
+    public Bitmap renderWithAndroid(int pageIndex, float scale) {
+        if (android == null) return null;
+        try {
+            return timed(android, clampPage(pageIndex), scale);
+        } catch (Throwable t) {
+            metrics.recordFailure();
+            Log.e(TAG, "Android PdfRenderer failed", t);
+            return null;
+        }
+    }
+
+    /**
+     * Measures both backends on the first pages (see {@link RendererSelector}) and keeps the winner.
+     * Blocking; call from a worker.
+     */
+    public RendererSelector.Backend runTrial(float scale) {
+        PdfBoxPageRenderer box = pdfBox;
+        if (box == null) return RendererSelector.Backend.ANDROID;
+        if (android == null) return RendererSelector.Backend.PDFBOX;
+        RendererSelector.Backend choice = RendererSelector.measure(box, android, scale);
+        if (choice == RendererSelector.Backend.ANDROID) {
+            switchToAndroid();
+        }
+        return choice;
+    }
+
+    /** Renders with PdfRenderer from now on. The pooled document keeps PDFBox for other handles. */
+    public void switchToAndroid() {
+        if (android == null) return;
+        pdfBox = null;
+    }
+
+    /** Gives the document back to the pool; the handle must not be used afterwards. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+            pdfBox = null;
+        }
+        DocumentPool.getInstance().release(document);
+    }
+
+    private void fallBack(PdfBoxPageRenderer failed, Throwable cause) {
+        metrics.recordFailure();
+        if (android == null) return;
+        synchronized (this) {
+            if (pdfBox != failed) return; // another thread already switched
+            pdfBox = null;
+        }
+        // Free PDFBox once no other handle renders with it; later opens load the file afresh
+        DocumentPool.getInstance().retire(document);
+        FallbackListener listener = fallbackListener;
+        if (listener != null) listener.onFallback(cause);
+    }
+
+    /** Out-of-range pages fall back to the first page, like the per-call renderers did. */
+    private int clampPage(int pageIndex) {
+        int count = getPageCount();
+        return (pageIndex < 0 || pageIndex >= count) ? 0 : pageIndex;
+    }
+
+    private Bitmap timed(PageRenderer renderer, int pageIndex, float scale) throws IOException {
+        long heapBefore = RenderMetrics.usedHeap();
+        long start = SystemClock.elapsedRealtime();
+        Bitmap bitmap = renderer.render(pageIndex, scale);
+        metrics.record(new RenderMetrics.Sample(renderer.getBackend(), pageIndex, scale,
+                SystemClock.elapsedRealtime() - start, bitmap.getAllocationByteCount(),
+                RenderMetrics.usedHeap() - heapBefore));
+        return bitmap;
+    }
+
+    private Bitmap timedRegion(PageRenderer renderer, int pageIndex, Matrix transform, int width, int height)
+            throws IOException {
+        long heapBefore = RenderMetrics.usedHeap();
+        long start = SystemClock.elapsedRealtime();
+        Bitmap bitmap = renderer.render(pageIndex, transform, width, height);
+        float[] v = new float[9];
+        transform.getValues(v);
+        float scale = (float) Math.hypot(v[Matrix.MSCALE_X], v[Matrix.MSKEW_Y]);
+        metrics.record(new RenderMetrics.Sample(renderer.getBackend(), pageIndex, scale,
+                SystemClock.elapsedRealtime() - start, bitmap.getAllocationByteCount(),
+                RenderMetrics.usedHeap() - heapBefore));
+        return bitmap;
+    }
+}
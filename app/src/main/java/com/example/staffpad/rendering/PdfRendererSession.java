@@ -0,0 +1,253 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.ParcelFileDescriptor;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps an Android {@link PdfRenderer} (and its file descriptor) open for as long as a PDF is in use,
+ * instead of re-parsing the file for every page or page count.
+ * <p>
+ * Sessions are shared per version of a file (path, length and modification time, like {@link DocumentPool}),
+ * so a file rewritten in place by crop or rearrange gets a new session. They are reference-counted: every
+ * {@link #acquire(File)} must be paired with {@link #release()}, and the last release closes all renderers.
+ * A PdfRenderer can only have one page open at a time, so each session holds a small pool of renderer
+ * instances over the same file; independent callers borrow an instance for the duration of one page and can
+ * therefore render in parallel.
+ */
+public final class PdfRendererSession {
+    private static final String TAG = "PdfRendererSession";
+    private static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final Map<String, PdfRendererSession> OPEN_SESSIONS = new HashMap<>();
+
+    /** Work performed on an open page while the pooled renderer is borrowed. */
+    public interface PageTask<T> {
+        T run(PdfRenderer.Page page) throws Exception;
+    }
+
+    private final File file;
+    private final String key;
+    private final int maxInstances;
+    private final ArrayDeque<PdfRenderer> idle = new ArrayDeque<>();
+    private final List<PdfRenderer> allInstances = new ArrayList<>();
+    private int refCount = 0;
+    private boolean closed = false;
+    private int pageCount = -1;
+    private boolean opened = false;
+    private Exception openError;
+
+    private PdfRendererSession(File file, String key, int maxInstances) {
+        this.file = file;
+        this.key = key;
+        this.maxInstances = Math.max(1, maxInstances);
+    }
+
+    /**
+     * Returns the shared session for the file, opening it if needed. The first renderer is created eagerly
+     * so that an unreadable file fails here rather than on the first page. The file is opened outside the
+     * global lock: other files stay available meanwhile, and callers for the same file wait for the opener.
+     */
+    public static PdfRendererSession acquire(File file) throws IOException {
+        String key = keyFor(file);
+        PdfRendererSession session;
+        boolean opener = false;
+        synchronized (OPEN_SESSIONS) {
+            session = OPEN_SESSIONS.get(key);
+            if (session == null) {
+                session = new PdfRendererSession(file, key, DEFAULT_POOL_SIZE);
+                OPEN_SESSIONS.put(key, session);
+                opener = true;
+            }
+            session.refCount++;
+        }
+        try {
+            if (opener) {
+                session.warmUp();
+            } else {
+                session.awaitOpen();
+            }
+        } catch (IOException | RuntimeException e) {
+            session.release();
+            throw e;
+        }
+        return session;
+    }
+
+    /** Drops one reference; the session is closed when nobody uses it anymore. */
+    public void release() {
+        synchronized (OPEN_SESSIONS) {
+            if (refCount <= 0) return;
+            refCount--;
+            if (refCount == 0) {
+                // A session that failed to open may already have been replaced under the same key
+                OPEN_SESSIONS.remove(key, this);
+                close();
+            }
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /** True if this session was opened for the current version of the given file. */
+    public boolean isFor(File other) {
+        return other != null && key.equals(keyFor(other));
+    }
+
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Renders a full page at the given scale (1.0 = one pixel per PDF point).
+     * Out-of-range indices fall back to the first page, matching the previous per-call renderer.
+     * The page is rendered on white; the bitmap comes from the {@link BitmapPool} and belongs to the caller.
+     */
+    public Bitmap renderPage(int pageIndex, float scale) throws Exception {
+        int count = getPageCount();
+        final int index = (pageIndex < 0 || pageIndex >= count) ? 0 : pageIndex;
+        return withPage(index, page -> {
+            int width = Math.max(1, (int) (page.getWidth() * scale));
+            int height = Math.max(1, (int) (page.getHeight() * scale));
+            Bitmap bitmap = BitmapPool.getInstance().acquire(width, height, Bitmap.Config.ARGB_8888);
+            try {
+                // PdfRenderer draws over the existing pixels; start from a white page like PDFBox does
+                bitmap.eraseColor(Color.WHITE);
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+            } catch (RuntimeException e) {
+                BitmapPool.getInstance().release(bitmap);
+                throw e;
+            }
+            return bitmap;
+        });
+    }
+
+    /** Opens the page on a pooled renderer, runs the task and returns the renderer to the pool. */
+    public <T> T withPage(int pageIndex, PageTask<T> task) throws Exception {
+        PdfRenderer renderer = borrow();
+        try {
+            try (PdfRenderer.Page page = renderer.openPage(pageIndex)) {
+                return task.run(page);
+            }
+        } finally {
+            giveBack(renderer);
+        }
+    }
+
+    private void warmUp() throws IOException {
+        PdfRenderer first;
+        try {
+            first = open();
+        } catch (IOException | RuntimeException e) {
+            // Later callers open the file afresh; those already waiting fail with this error
+            synchronized (OPEN_SESSIONS) {
+                OPEN_SESSIONS.remove(key, this);
+            }
+            synchronized (this) {
+                openError = e;
+                notifyAll();
+            }
+            throw e;
+        }
+        synchronized (this) {
+            pageCount = first.getPageCount();
+            allInstances.add(first);
+            idle.push(first);
+            opened = true;
+            notifyAll();
+        }
+    }
+
+    private synchronized void awaitOpen() throws IOException {
+        boolean interrupted = false;
+        while (!opened && openError == null) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        if (openError != null) throw new IOException("Could not open " + file, openError);
+    }
+
+    private PdfRenderer open() throws IOException {
+        ParcelFileDescriptor fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        try {
+            // PdfRenderer takes ownership of the descriptor and closes it together with itself
+            return new PdfRenderer(fd);
+        } catch (IOException | RuntimeException e) {
+            try { fd.close(); } catch (Throwable ignored) {}
+            throw e;
+        }
+    }
+
+    private PdfRenderer borrow() throws IOException, InterruptedException {
+        synchronized (this) {
+            while (true) {
+                if (closed) throw new IllegalStateException("PdfRendererSession closed: " + file);
+                if (!idle.isEmpty()) return idle.pop();
+                if (allInstances.size() < maxInstances) {
+                    // Reserve a slot; the renderer itself is opened outside the lock
+                    allInstances.add(null);
+                    break;
+                }
+                wait();
+            }
+        }
+        PdfRenderer renderer = null;
+        try {
+            renderer = open();
+            return renderer;
+        } finally {
+            synchronized (this) {
+                allInstances.remove(null);
+                if (renderer != null) allInstances.add(renderer);
+                notifyAll();
+            }
+        }
+    }
+
+    private void giveBack(PdfRenderer renderer) {
+        synchronized (this) {
+            if (!closed) {
+                idle.push(renderer);
+                notifyAll();
+                return;
+            }
+            allInstances.remove(renderer);
+        }
+        // Session was closed while this renderer was in use
+        try { renderer.close(); } catch (Throwable ignored) {}
+    }
+
+    private void close() {
+        List<PdfRenderer> toClose;
+        synchronized (this) {
+            closed = true;
+            toClose = new ArrayList<>(idle);
+            allInstances.removeAll(idle);
+            idle.clear();
+            notifyAll();
+        }
+        for (PdfRenderer r : toClose) {
+            try { r.close(); } catch (Throwable t) { Log.w(TAG, "Error closing PdfRenderer", t); }
+        }
+    }
+
+    private static String keyFor(File file) {
+        return DocumentPool.keyFor(file);
+    }
+}
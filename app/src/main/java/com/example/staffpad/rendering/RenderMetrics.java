@@ -0,0 +1,91 @@
+package com.example.staffpad.rendering;
+
+import android.util.Log;
+
+/**
+ * Per-call timing and memory figures for page renders of one document, for logging and benchmarking.
+ * Thread-safe.
+ */
+public final class RenderMetrics {
+    private static final String TAG = "RenderMetrics";
+
+    /** One render call. */
+    public static final class Sample {
+        public final RendererSelector.Backend backend;
+        public final int pageIndex;
+        public final float scale;
+        public final long millis;
+        public final long bitmapBytes;
+        public final long heapDelta;
+
+        Sample(RendererSelector.Backend backend, int pageIndex, float scale, long millis, long bitmapBytes, long heapDelta) {
+            this.backend = backend;
+            this.pageIndex = pageIndex;
+            this.scale = scale;
+            this.millis = millis;
+            this.bitmapBytes = bitmapBytes;
+            this.heapDelta = heapDelta;
+        }
+
+        @Override
+        public String toString() {
+            return backend + " page " + pageIndex + " @" + scale + ": " + millis + " ms, "
+                    + (bitmapBytes / 1024) + " KB bitmap, heap +" + (heapDelta / 1024) + " KB";
+        }
+    }
+
+    private int count;
+    private int failures;
+    private long totalMillis;
+    private long maxMillis;
+    private long totalBitmapBytes;
+    private Sample last;
+
+    synchronized void record(Sample sample) {
+        count++;
+        totalMillis += sample.millis;
+        maxMillis = Math.max(maxMillis, sample.millis);
+        totalBitmapBytes += sample.bitmapBytes;
+        last = sample;
+        Log.d(TAG, sample.toString());
+    }
+
+    synchronized void recordFailure() {
+        failures++;
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getFailures() {
+        return failures;
+    }
+
+    public synchronized long getAverageMillis() {
+        return count > 0 ? totalMillis / count : 0;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxMillis;
+    }
+
+    public synchronized long getTotalBitmapBytes() {
+        return totalBitmapBytes;
+    }
+
+    public synchronized Sample getLast() {
+        return last;
+    }
+
+    static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return count + " renders, avg " + getAverageMillis() + " ms, max " + maxMillis + " ms, "
+                + failures + " failures";
+    }
+}
@@ -0,0 +1,164 @@
+package com.example.staffpad.rendering;
+
+import android.os.Process;
+import android.util.Log;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small worker pool for page rendering owned by a screen's lifecycle.
+ * <p>
+ * Visible-page work has its own workers; prefetch and export share one background worker, where prefetch
+ * runs first. A long export or prefetch therefore never holds up the visible page, which a shared queue
+ * could not prevent because running tasks are not preempted. Within a priority, work runs in submission
+ * order. Requests for the visible page carry a generation: starting a new generation drops the
+ * queued work of older ones, and {@link #isCurrent(int)} lets running work check before it displays
+ * anything, so a stale page can never replace a newer one. Cancellation is cooperative; running tasks are
+ * not interrupted because that would also close file channels the PDF renderers read from.
+ */
+public final class RenderScheduler {
+    private static final String TAG = "RenderScheduler";
+
+    public enum Priority { VISIBLE, PREFETCH, EXPORT }
+
+    private final ThreadPoolExecutor visible;
+    private final ThreadPoolExecutor background;
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Set<Task> queued = ConcurrentHashMap.newKeySet();
+    private volatile boolean shutdown = false;
+
+    /** @param threads total workers; one is the background worker, the rest (at least one) serve the visible page */
+    public RenderScheduler(String name, int threads) {
+        visible = newExecutor(name, Math.max(1, threads - 1));
+        background = newExecutor(name + "-bg", 1);
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name, int threads) {
+        final AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /** Starts a new visible-page request; queued visible work of earlier generations is dropped. */
+    public int nextGeneration() {
+        int gen = generation.incrementAndGet();
+        for (Task task : queued) {
+            if (task.priority == Priority.VISIBLE && task.generation != gen) {
+                task.cancel(false);
+            }
+        }
+        return gen;
+    }
+
+    /** Generation of the latest visible-page request, for work that belongs to the page already shown. */
+    public int currentGeneration() {
+        return generation.get();
+    }
+
+    /** True while no newer visible-page request was made and the scheduler is still running. */
+    public boolean isCurrent(int gen) {
+        return !shutdown && generation.get() == gen;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    /** Work for the visible page of the given generation. */
+    public Future<?> submitVisible(int gen, Runnable work) {
+        return enqueue(new Task(work, Priority.VISIBLE, gen));
+    }
+
+    public Future<?> submit(Priority priority, Runnable work) {
+        return enqueue(new Task(work, priority, 0));
+    }
+
+    /** Drops queued and flags running work of the given priority. */
+    public void cancel(Priority priority) {
+        for (Task task : queued) {
+            if (task.priority == priority) task.cancel(false);
+        }
+    }
+
+    /** Stops accepting work and drops everything queued; running tasks finish on their own. */
+    public void shutdown() {
+        shutdown = true;
+        generation.incrementAndGet();
+        for (Task task : queued) {
+            task.cancel(false);
+        }
+        visible.shutdown();
+        background.shutdown();
+    }
+
+    private Future<?> enqueue(Task task) {
+        if (shutdown) {
+            task.cancel(false);
+            return task;
+        }
+        queued.add(task);
+        try {
+            (task.priority == Priority.VISIBLE ? visible : background).execute(task);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Render task rejected", e);
+            task.cancel(false);
+        }
+        return task;
+    }
+
+    private final class Task extends FutureTask<Void> implements Comparable<Task> {
+        final Priority priority;
+        final int generation;
+        final long seq;
+
+        Task(Runnable work, Priority priority, int generation) {
+            super(() -> {
+                try {
+                    work.run();
+                } catch (Throwable t) {
+                    Log.e(TAG, "Render task failed", t);
+                }
+            }, null);
+            this.priority = priority;
+            this.generation = generation;
+            this.seq = sequence.incrementAndGet();
+        }
+
+        @Override
+        public void run() {
+            if (priority == Priority.VISIBLE && generation != RenderScheduler.this.generation.get()) {
+                cancel(false);
+                return;
+            }
+            Process.setThreadPriority(priority == Priority.VISIBLE
+                    ? Process.THREAD_PRIORITY_DEFAULT : Process.THREAD_PRIORITY_BACKGROUND);
+            super.run();
+        }
+
+        @Override
+        protected void done() {
+            queued.remove(this);
+        }
+
+        @Override
+        public int compareTo(Task other) {
+            int byPriority = Integer.compare(priority.ordinal(), other.priority.ordinal());
+            return byPriority != 0 ? byPriority : Long.compare(seq, other.seq);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.staffpad.rendering;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Picks the PDF backend for a document by measuring both on its first pages.
+ * <p>
+ * File size says little about rendering cost: small vector scores are often faster in Android's
+ * PdfRenderer, while some large scanned files render fine in PDFBox. The trial renders up to
+ * {@link #TRIAL_PAGES} pages with each backend, timing them and recording how much the Java heap grew.
+ * Each backend first renders one untimed warm-up page, and the backends take turns going first on the
+ * timed pages, so neither is measured against colder caches than the other.
+ * PDFBox is ruled out when its heap growth would take a large share of the remaining heap (denser pages
+ * would then run out of memory); otherwise the faster backend wins. The result is meant to be stored
+ * per sheet so the trial runs only once.
+ */
+public final class RendererSelector {
+    private static final String TAG = "RendererSelector";
+
+    public enum Backend { PDFBOX, ANDROID }
+
+    private static final int TRIAL_PAGES = 2;
+    // PDFBox may use at most this share of the free heap for a trial page
+    private static final float MAX_HEAP_SHARE = 0.25f;
+
+    private RendererSelector() {}
+
+    /** Parses a stored backend name; null if unknown or not measured yet. */
+    public static Backend fromName(String name) {
+        if (name == null) return null;
+        try {
+            return Backend.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Renders the first pages with both backends and returns the cheaper one. Blocking; call from a worker.
+     */
+    public static Backend measure(PageRenderer pdfBox, PageRenderer android, float scale) {
+        if (pdfBox == null) return Backend.ANDROID;
+        if (android == null) return Backend.PDFBOX;
+        int pages = Math.min(TRIAL_PAGES, pdfBox.getPageCount());
+        Trial pdfBoxTrial = new Trial();
+        Trial androidTrial = new Trial();
+        // Warm-up: the first render of a document pays for font loading and parsing
+        render(pdfBox, 0, scale, pdfBoxTrial, false);
+        render(android, 0, scale, androidTrial, false);
+        for (int i = 0; i < pages; i++) {
+            if (i % 2 == 0) {
+                render(pdfBox, i, scale, pdfBoxTrial, true);
+                render(android, i, scale, androidTrial, true);
+            } else {
+                render(android, i, scale, androidTrial, true);
+                render(pdfBox, i, scale, pdfBoxTrial, true);
+            }
+        }
+        Backend choice = choose(pdfBoxTrial, androidTrial, freeHeap());
+        Log.d(TAG, "Renderer trial: PDFBox " + pdfBoxTrial + ", PdfRenderer " + androidTrial + " -> " + choice);
+        return choice;
+    }
+
+    /** Renders one page into the trial; a failure marks the trial failed, even for the warm-up page. */
+    private static void render(PageRenderer renderer, int page, float scale, Trial trial, boolean timed) {
+        if (trial.failed) return;
+        long heapBefore = RenderMetrics.usedHeap();
+        long start = SystemClock.elapsedRealtime();
+        try {
+            Bitmap bitmap = renderer.render(page, scale);
+            if (timed) trial.record(SystemClock.elapsedRealtime() - start, RenderMetrics.usedHeap() - heapBefore);
+            BitmapPool.getInstance().release(bitmap);
+        } catch (OutOfMemoryError oom) {
+            Log.w(TAG, renderer.getBackend() + " trial ran out of memory");
+            trial.failed = true;
+        } catch (Throwable t) {
+            Log.w(TAG, renderer.getBackend() + " trial failed", t);
+            trial.failed = true;
+        }
+    }
+
+    /** Picks the backend from both trials; package-private for tests. */
+    static Backend choose(Trial pdfBox, Trial android, long freeHeap) {
+        if (pdfBox.failed) return Backend.ANDROID;
+        if (android.failed) return Backend.PDFBOX;
+        if (pdfBox.peakHeapDelta > freeHeap * MAX_HEAP_SHARE) return Backend.ANDROID;
+        return pdfBox.millis < android.millis ? Backend.PDFBOX : Backend.ANDROID;
+    }
+
+    private static long freeHeap() {
+        return Runtime.getRuntime().maxMemory() - RenderMetrics.usedHeap();
+    }
+
+    static final class Trial {
+        long millis;
+        long peakHeapDelta;
+        boolean failed;
+
+        void record(long elapsed, long heapDelta) {
+            millis += elapsed;
+            peakHeapDelta = Math.max(peakHeapDelta, heapDelta);
+        }
+
+        @Override
+        public String toString() {
+            return failed ? "failed" : millis + " ms, heap +" + (peakHeapDelta / 1024) + " KB";
+        }
+    }
+}
@@ -17,6 +17,10 @@ public class SharedPreferencesHelper {
     private static final String KEY_LAST_SHEET_ID = "last_sheet_id";
     private static final String KEY_LAST_PAGE_NUMBER = "last_page_number";
     private static final String KEY_THEME_MODE = "theme_mode"; // stores AppCompatDelegate mode int
+    private static final String KEY_PAGE_CACHE_MB = "page_cache_mb";
+    private static final String KEY_REDUCED_DEPTH_PAGES = "reduced_depth_pages";
+
+    public static final int DEFAULT_PAGE_CACHE_MB = 256;
 
     private final SharedPreferences preferences;
 
@@ -84,4 +88,29 @@ public class SharedPreferencesHelper {
         AppCompatDelegate.setDefaultNightMode(mode);
         Log.d(TAG, "Applied theme mode: " + mode);
     }
-}
\ No newline at end of file
+
+    // ---------------- RENDERED PAGE CACHE ----------------
+    /**
+     * Disk budget for rendered pages kept between sessions, in megabytes. 0 disables the cache.
+     */
+    public void setPageCacheBudgetMb(int mb) {
+        preferences.edit().putInt(KEY_PAGE_CACHE_MB, Math.max(0, mb)).apply();
+    }
+
+    /** Returns the disk budget for rendered pages in megabytes. */
+    public int getPageCacheBudgetMb() {
+        return preferences.getInt(KEY_PAGE_CACHE_MB, DEFAULT_PAGE_CACHE_MB);
+    }
+
+    /**
+     * Keep monochrome pages in memory as RGB_565 instead of ARGB_8888, halving their size.
+     */
+    public void setReducedDepthPages(boolean enabled) {
+        preferences.edit().putBoolean(KEY_REDUCED_DEPTH_PAGES, enabled).apply();
+    }
+
+    /** Returns whether monochrome pages are held at reduced depth (on by default). */
+    public boolean isReducedDepthPages() {
+        return preferences.getBoolean(KEY_REDUCED_DEPTH_PAGES, true);
+    }
+}
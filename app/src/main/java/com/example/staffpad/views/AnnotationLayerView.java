@@ -0,0 +1,88 @@
+package com.example.staffpad.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.example.staffpad.rendering.BitmapPool;
+import com.example.staffpad.rendering.OverlayBitmapCache;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persisted annotation layers of the displayed page, drawn above the PhotoView and its tiles.
+ * <p>
+ * The page bitmap no longer contains annotations, so showing, hiding or toggling them only changes this
+ * view: no page re-render and no full-page copy. The layer bitmaps are stretched over the PhotoView's display
+ * rect, which is updated from its matrix listener, and are drawn by the hardware canvas from their uploaded
+ * textures. Bitmaps come pinned from the {@link OverlayBitmapCache}; this view unpins them when they are
+ * replaced.
+ */
+public class AnnotationLayerView extends View {
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private List<Bitmap> layers = Collections.emptyList();
+    private RectF displayRect;
+
+    public AnnotationLayerView(Context context) {
+        super(context);
+        init();
+    }
+
+    public AnnotationLayerView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public AnnotationLayerView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        setWillNotDraw(false);
+        setClickable(false);
+        setFocusable(false);
+    }
+
+    /**
+     * Shows the given layer bitmaps (bottom first), taking over their pins. Callers should have called
+     * {@link Bitmap#prepareToDraw()} on a worker thread so the upload does not land on the first frame.
+     */
+    public void setLayers(List<Bitmap> next, RectF currentDisplayRect) {
+        List<Bitmap> previous = layers;
+        layers = next != null ? next : Collections.emptyList();
+        for (Bitmap bmp : previous) BitmapPool.getInstance().unpin(bmp);
+        setDisplayRect(currentDisplayRect);
+    }
+
+    public void clear() {
+        setLayers(null, displayRect);
+    }
+
+    /** Called whenever the PhotoView's display matrix changes (zoom, pan, new drawable). */
+    public void setDisplayRect(RectF rect) {
+        displayRect = rect != null ? new RectF(rect) : null;
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        RectF rect = displayRect;
+        if (rect == null || rect.isEmpty()) return;
+        for (Bitmap bmp : layers) {
+            if (!bmp.isRecycled()) canvas.drawBitmap(bmp, null, rect, paint);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        clear();
+    }
+}
@@ -6,6 +6,7 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
@@ -15,21 +16,40 @@ import android.content.res.Resources;
 import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 
+import androidx.annotation.NonNull;
+import androidx.ink.authoring.InProgressStrokeId;
+import androidx.ink.authoring.InProgressStrokesFinishedListener;
+import androidx.ink.authoring.InProgressStrokesView;
+import androidx.ink.brush.Brush;
+import androidx.ink.brush.StockBrushes;
+import androidx.input.motionprediction.MotionEventPredictor;
+
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * Simple transparent overlay view that supports freehand drawing, text boxes, eraser, and undo/redo.
- * This is a minimal implementation to satisfy initial requirements.
+ * <p>
+ * Committed items are rasterized into a view-sized ink bitmap, so a frame costs one bitmap draw plus the
+ * item in progress however full the page is. A finished stroke is drawn into the bitmap once; undo,
+ * loading and text edits rebuild it. The view stays hardware accelerated: the eraser in progress clears
+ * through an offscreen layer limited to its bounds, and is applied to the bitmap when it ends.
+ * <p>
+ * With a front buffer set ({@link #setFrontBufferView}) and ink enabled, the pen stroke in progress is drawn
+ * by that {@link InProgressStrokesView} (front-buffered, extended by motion prediction) instead of through
+ * this view's frames. The samples are still recorded into a {@link Stroke}, which is committed on pen-up.
  */
 public class AnnotationOverlayView extends View {
 
     public enum ToolMode { NONE, PEN, ERASER, TEXT }
 
-    // Stylus/Jetpack Ink integration flags (no hard dependency; graceful fallback)
+    // Stylus/Jetpack Ink integration flags: historical samples, pressure width and the front-buffered pen
     private boolean inkEnabled = true; // default on for better pens
     private boolean stylusInUse = false;
     private boolean tempEraserFromButton = false;
@@ -43,7 +63,7 @@ public class AnnotationOverlayView extends View {
         public final Path path = new Path();
         public final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         // Sampled points for serialization/history
-        public final java.util.List<float[]> points = new java.util.ArrayList<>();
+        public final StrokeBuffer points = new StrokeBuffer();
         public Stroke(int color, float width, int alpha) {
             paint.setStyle(Paint.Style.STROKE);
             paint.setStrokeJoin(Paint.Join.ROUND);
@@ -53,12 +73,15 @@ public class AnnotationOverlayView extends View {
             paint.setAlpha(alpha);
         }
         public void addPoint(float x, float y, boolean moveTo) {
+            addPoint(x, y, 1f, 0L, moveTo);
+        }
+        public void addPoint(float x, float y, float pressure, long eventTime, boolean moveTo) {
             if (moveTo) {
                 path.moveTo(x, y);
             } else {
                 path.lineTo(x, y);
             }
-            points.add(new float[]{x, y});
+            points.add(x, y, pressure, eventTime);
         }
         @Override public void draw(Canvas c) { c.drawPath(path, paint); }
         @Override public boolean hitTest(float x, float y) {
@@ -71,7 +94,7 @@ public class AnnotationOverlayView extends View {
         public final Path path = new Path();
         public final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
         // Sampled points for serialization/history
-        public final java.util.List<float[]> points = new java.util.ArrayList<>();
+        public final StrokeBuffer points = new StrokeBuffer();
         public EraseStroke(float widthPx) {
             paint.setStyle(Paint.Style.STROKE);
             paint.setStrokeJoin(Paint.Join.ROUND);
@@ -80,12 +103,15 @@ public class AnnotationOverlayView extends View {
             paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.CLEAR));
         }
         public void addPoint(float x, float y, boolean moveTo) {
+            addPoint(x, y, 1f, 0L, moveTo);
+        }
+        public void addPoint(float x, float y, float pressure, long eventTime, boolean moveTo) {
             if (moveTo) {
                 path.moveTo(x, y);
             } else {
                 path.lineTo(x, y);
             }
-            points.add(new float[]{x, y});
+            points.add(x, y, pressure, eventTime);
         }
         @Override public void draw(Canvas c) { c.drawPath(path, paint); }
         @Override public boolean hitTest(float x, float y) { return false; }
@@ -142,6 +168,27 @@ public class AnnotationOverlayView extends View {
     // Paint for selection rectangle
     private final Paint selectionPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
 
+    // Committed items, rebuilt from `items` when stale
+    private Bitmap inkBitmap;
+    private Canvas inkCanvas;
+    private boolean inkStale = true;
+    private final RectF eraseBounds = new RectF();
+
+    // Low-latency pen: wet stroke on the front buffer, null id when the stroke is drawn here
+    private InProgressStrokesView frontBuffer;
+    private MotionEventPredictor predictor;
+    private InProgressStrokeId frontStrokeId;
+    private final InProgressStrokesFinishedListener frontBufferListener = new InProgressStrokesFinishedListener() {
+        @Override
+        public void onStrokesFinished(@NonNull Map<InProgressStrokeId, androidx.ink.strokes.Stroke> strokes) {
+            // The stroke was committed to the ink bitmap on pen-up; drop the wet copy once that frame is drawn
+            InProgressStrokesView view = frontBuffer;
+            if (view == null || strokes.isEmpty()) return;
+            Set<InProgressStrokeId> ids = new HashSet<>(strokes.keySet());
+            postOnAnimation(() -> view.removeFinishedStrokes(ids));
+        }
+    };
+
     public AnnotationOverlayView(Context context) {
         super(context);
         init();
@@ -157,8 +204,6 @@ public class AnnotationOverlayView extends View {
 
     private void init() {
         setWillNotDraw(false);
-        // Use software layer so CLEAR xfermode works reliably
-        setLayerType(LAYER_TYPE_SOFTWARE, null);
         selectionPaint.setStyle(Paint.Style.STROKE);
         selectionPaint.setStrokeWidth(3f);
         selectionPaint.setColor(Color.BLUE);
@@ -184,25 +229,105 @@ public class AnnotationOverlayView extends View {
         items.clear();
         undoStack.clear();
         redoStack.clear();
-        invalidate();
+        notifyItemsChanged();
     }
 
     public void undo() {
         if (!items.isEmpty()) {
             AnnotationItem item = items.remove(items.size()-1);
             undoStack.push(item);
-            invalidate();
+            notifyItemsChanged();
         }
     }
 
     public void redo() {
         if (!undoStack.isEmpty()) {
             AnnotationItem item = undoStack.pop();
-            items.add(item);
+            commit(item);
             invalidate();
         }
     }
 
+    /** Call after changing a committed item (e.g. a text box's text or style) so the ink is redrawn. */
+    public void notifyItemsChanged() {
+        inkStale = true;
+        invalidate();
+    }
+
+    /** Adds a finished item and draws it into the ink bitmap, unless that is rebuilt anyway. */
+    private void commit(AnnotationItem item) {
+        items.add(item);
+        if (!inkStale && inkCanvas != null) item.draw(inkCanvas);
+    }
+
+    /** Returns the ink bitmap of committed items, creating or rebuilding it as needed; null before layout. */
+    private Bitmap ensureInk() {
+        int w = getWidth();
+        int h = getHeight();
+        if (w <= 0 || h <= 0) return null;
+        if (inkBitmap == null || inkBitmap.getWidth() != w || inkBitmap.getHeight() != h) {
+            releaseInk();
+            inkBitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+            inkCanvas = new Canvas(inkBitmap);
+            inkStale = true;
+        }
+        if (inkStale) {
+            inkBitmap.eraseColor(Color.TRANSPARENT);
+            // A bitmap canvas is software, so eraser strokes CLEAR here as before
+            for (AnnotationItem it : items) {
+                it.draw(inkCanvas);
+            }
+            inkStale = false;
+        }
+        return inkBitmap;
+    }
+
+    private void releaseInk() {
+        if (inkBitmap != null) inkBitmap.recycle();
+        inkBitmap = null;
+        inkCanvas = null;
+        inkStale = true;
+    }
+
+    @Override
+    protected void onVisibilityChanged(View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        if (changedView != this) return;
+        if (frontBuffer != null) frontBuffer.setVisibility(visibility);
+        // Only shown while annotating; don't hold a full-view bitmap otherwise
+        if (visibility != VISIBLE) releaseInk();
+    }
+
+    /**
+     * Draws pen strokes in progress through {@code view}, which must cover this view with identical bounds and
+     * not consume touches. Its visibility follows this view. Pass null to draw them here again.
+     */
+    public void setFrontBufferView(InProgressStrokesView view) {
+        if (frontBuffer != null) frontBuffer.removeFinishedStrokesListener(frontBufferListener);
+        frontBuffer = view;
+        frontStrokeId = null;
+        predictor = null;
+        if (view != null) {
+            view.addFinishedStrokesListener(frontBufferListener);
+            view.setVisibility(getVisibility());
+            try {
+                predictor = MotionEventPredictor.newInstance(this);
+            } catch (Throwable ignore) {}
+        }
+    }
+
+    private static Brush frontBufferBrush(Stroke stroke) {
+        // Same color (alpha included) and width as the committed stroke, so the handover is seamless
+        return Brush.createWithColorIntArgb(StockBrushes.getMarkerLatest(), stroke.paint.getColor(),
+                stroke.paint.getStrokeWidth(), 0.1f);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        releaseInk();
+    }
+
     public List<AnnotationItem> getItemsSnapshot() {
         return new ArrayList<>(items);
     }
@@ -228,11 +353,25 @@ public class AnnotationOverlayView extends View {
     @Override
     protected void onDraw(Canvas canvas) {
         super.onDraw(canvas);
-        for (AnnotationItem it : items) {
-            it.draw(canvas);
+        Bitmap ink = ensureInk();
+        if (ink != null && currentErase != null) {
+            // Plain blit outside the eraser's bounds; inside, ink and eraser go through an offscreen layer
+            currentErase.path.computeBounds(eraseBounds, true);
+            float pad = currentErase.paint.getStrokeWidth() / 2f + 1f;
+            eraseBounds.inset(-pad, -pad);
+            canvas.save();
+            canvas.clipOutRect(eraseBounds);
+            canvas.drawBitmap(ink, 0, 0, null);
+            canvas.restore();
+            canvas.saveLayer(eraseBounds, null);
+            canvas.drawBitmap(ink, 0, 0, null);
+            currentErase.draw(canvas);
+            canvas.restore();
+        } else if (ink != null) {
+            canvas.drawBitmap(ink, 0, 0, null);
         }
-        if (currentStroke != null) currentStroke.draw(canvas);
-        if (currentErase != null) currentErase.draw(canvas);
+        // A front-buffered stroke is on screen already
+        if (currentStroke != null && frontStrokeId == null) currentStroke.draw(canvas);
         if (currentTextBox != null) currentTextBox.draw(canvas);
 
         // Draw selection rectangle around selected text when in TEXT mode
@@ -306,19 +445,51 @@ public class AnnotationOverlayView extends View {
                     currentStroke.paint.setStrokeWidth(Math.max(1f, penWidthPx * (0.6f + 0.4f * pressure)));
                 } catch (Throwable ignore) {}
             }
-            currentStroke.addPoint(x, y, true);
+            currentStroke.addPoint(x, y, event.getPressure(pointerIndex), event.getEventTime(), true);
             redoStack.clear();
+            if (inkEnabled && frontBuffer != null) {
+                try {
+                    if (predictor != null) predictor.record(event);
+                    frontStrokeId = frontBuffer.startStroke(event, event.getPointerId(pointerIndex), frontBufferBrush(currentStroke));
+                } catch (Throwable t) {
+                    frontStrokeId = null; // draw this stroke here
+                }
+            }
         } else if (action == MotionEvent.ACTION_MOVE) {
             if (currentStroke != null) {
                 // use historical points for smoothing
                 if (inkEnabled) addHistoricalPointsToStroke(currentStroke, event, pointerIndex);
-                currentStroke.addPoint(x, y, false);
+                currentStroke.addPoint(x, y, event.getPressure(pointerIndex), event.getEventTime(), false);
+            }
+            if (frontStrokeId != null) {
+                // Extend the wet stroke a few ms ahead of the finger; the prediction is replaced by the next real event
+                MotionEvent predicted = null;
+                try {
+                    if (predictor != null) {
+                        predictor.record(event);
+                        predicted = predictor.predict();
+                    }
+                    frontBuffer.addToStroke(event, event.getPointerId(pointerIndex), frontStrokeId, predicted);
+                } catch (Throwable ignore) {
+                } finally {
+                    if (predicted != null) predicted.recycle();
+                }
             }
         } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            if (frontStrokeId != null) {
+                try {
+                    if (action == MotionEvent.ACTION_UP) {
+                        frontBuffer.finishStroke(event, event.getPointerId(pointerIndex), frontStrokeId);
+                    } else {
+                        frontBuffer.cancelStroke(frontStrokeId, event);
+                    }
+                } catch (Throwable ignore) {}
+                frontStrokeId = null;
+            }
             if (currentStroke != null) {
                 if (inkEnabled) addHistoricalPointsToStroke(currentStroke, event, pointerIndex);
-                currentStroke.addPoint(x, y, false);
-                items.add(currentStroke);
+                currentStroke.addPoint(x, y, event.getPressure(pointerIndex), event.getEventTime(), false);
+                commit(currentStroke);
                 currentStroke = null;
             }
             // Stylus ended; allow fingers again
@@ -327,7 +498,8 @@ public class AnnotationOverlayView extends View {
                 tempEraserFromButton = false;
             }
         }
-        invalidate();
+        // While front-buffered, frames of this view are not needed until the stroke is committed
+        if (frontStrokeId == null) invalidate();
     }
 
     private void handleEraserTouch(MotionEvent event, float x, float y) {
@@ -336,18 +508,18 @@ public class AnnotationOverlayView extends View {
         int action = event.getActionMasked();
         if (action == MotionEvent.ACTION_DOWN) {
             currentErase = new EraseStroke(eraserWidthPx);
-            currentErase.addPoint(x, y, true);
+            currentErase.addPoint(x, y, event.getPressure(pointerIndex), event.getEventTime(), true);
             redoStack.clear();
         } else if (action == MotionEvent.ACTION_MOVE) {
             if (currentErase != null) {
                 if (inkEnabled) addHistoricalPointsToErase(currentErase, event, pointerIndex);
-                currentErase.addPoint(x, y, false);
+                currentErase.addPoint(x, y, event.getPressure(pointerIndex), event.getEventTime(), false);
             }
         } else if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
             if (currentErase != null) {
                 if (inkEnabled) addHistoricalPointsToErase(currentErase, event, pointerIndex);
-                currentErase.addPoint(x, y, false);
-                items.add(currentErase);
+                currentErase.addPoint(x, y, event.getPressure(pointerIndex), event.getEventTime(), false);
+                commit(currentErase);
                 currentErase = null;
             }
             if (event.getToolType(pointerIndex) == MotionEvent.TOOL_TYPE_STYLUS) {
@@ -366,7 +538,7 @@ public class AnnotationOverlayView extends View {
             onRequestEditTextListener.onRequestEdit(currentTextBox);
         }
         // Add immediately (text may be empty until edited)
-        items.add(currentTextBox);
+        commit(currentTextBox);
         currentTextBox = null;
         invalidate();
     }
@@ -392,7 +564,7 @@ public class AnnotationOverlayView extends View {
                     draggingTextBox.x = newX;
                     draggingTextBox.y = newY;
                     didMove = true;
-                    invalidate();
+                    notifyItemsChanged();
                 }
                 return true;
             case MotionEvent.ACTION_UP:
@@ -430,24 +602,23 @@ public class AnnotationOverlayView extends View {
     private OnRequestEditTextListener onRequestEditTextListener;
     public void setOnRequestEditTextListener(OnRequestEditTextListener l) { this.onRequestEditTextListener = l; }
 
+    /** Replaces the items with a saved layer's ops; all of them are kept, since saving writes the items back. */
     public void setItemsFromHistory(List<AnnotationItem> history) {
         items.clear();
         undoStack.clear();
         redoStack.clear();
         if (history != null) {
-            int start = Math.max(0, history.size() - 20);
-            for (int i = start; i < history.size(); i++) {
-                AnnotationItem it = history.get(i);
+            for (AnnotationItem it : history) {
                 // Defensive: only accept known types
                 if (it instanceof Stroke || it instanceof EraseStroke || it instanceof TextBox) {
                     items.add(it);
                 }
             }
         }
-        invalidate();
+        notifyItemsChanged();
     }
 
-    // --- Stylus helpers and Jetpack Ink (reflection-ready) ---
+    // --- Stylus helpers ---
     private int findStylusPointerIndex(MotionEvent e) {
         int pc = e.getPointerCount();
         for (int i = 0; i < pc; i++) {
@@ -464,7 +635,7 @@ public class AnnotationOverlayView extends View {
         for (int i = 0; i < hs; i++) {
             float hx = e.getHistoricalX(pointerIndex, i);
             float hy = e.getHistoricalY(pointerIndex, i);
-            s.addPoint(hx, hy, false);
+            s.addPoint(hx, hy, e.getHistoricalPressure(pointerIndex, i), e.getHistoricalEventTime(i), false);
         }
     }
 
@@ -474,7 +645,7 @@ public class AnnotationOverlayView extends View {
         for (int i = 0; i < hs; i++) {
             float hx = e.getHistoricalX(pointerIndex, i);
             float hy = e.getHistoricalY(pointerIndex, i);
-            s.addPoint(hx, hy, false);
+            s.addPoint(hx, hy, e.getHistoricalPressure(pointerIndex, i), e.getHistoricalEventTime(i), false);
         }
     }
 
@@ -0,0 +1,420 @@
+package com.example.staffpad.views;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Process;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+
+import com.example.staffpad.rendering.BitmapPool;
+import com.example.staffpad.rendering.OverlayBitmapCache;
+import com.example.staffpad.rendering.PdfRendererSession;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Transparent view drawn above the PhotoView that shows sharp tiles of the visible part of a page
+ * once the user zooms in beyond the resolution of the displayed page bitmap.
+ * <p>
+ * Tiles are rasterized straight from the PDF with {@link PdfRenderer.Page#render} using a transform,
+ * so only the viewport is rendered at the current zoom level. Rendering happens on a background thread,
+ * tiles that scroll out of view before they are rendered are cancelled, and finished tiles are kept in a
+ * small byte-bounded cache. Each tile stays well below the GPU texture limit.
+ */
+public class PageTileView extends View {
+    private static final String TAG = "PageTileView";
+
+    private static final int TILE_SIZE = 512;
+    // Only draw tiles when the page bitmap is magnified beyond this factor on screen
+    private static final float MIN_TILE_ZOOM = 1.15f;
+    // Wait for the gesture to settle before requesting new tiles
+    private static final long SETTLE_DELAY_MS = 90;
+    private static final int MAX_TILES_PER_PASS = 64;
+    private static final int DEFAULT_MAX_TEXTURE_SIZE = 4096;
+    private static final int MAX_CACHE_BYTES = 48 * 1024 * 1024;
+
+    private static volatile int maxTextureSize = 0;
+    private static LruCache<String, Bitmap> tileCache;
+
+    /**
+     * Describes how the page bitmap shown in the PhotoView was produced, so tiles can reproduce it.
+     */
+    public static final class Source {
+        final String key;
+        final File pdfFile;
+        final int pageIndex;
+        final Matrix pageToContent;
+        final int contentWidth;
+        final int contentHeight;
+        final ColorFilter colorFilter;
+        final List<String> overlayPaths;
+
+        /**
+         * @param key identifies the page state; tiles are cached under it
+         * @param pageToContent maps PDF points to pixels of the displayed page bitmap
+         * @param contentWidth width of the displayed page bitmap
+         * @param contentHeight height of the displayed page bitmap
+         * @param colorFilter brightness/contrast filter of the page, or null
+         * @param overlayPaths layer images composited over the page, in drawing order
+         */
+        public Source(String key, File pdfFile, int pageIndex, Matrix pageToContent, int contentWidth,
+                      int contentHeight, ColorFilter colorFilter, List<String> overlayPaths) {
+            this.key = key;
+            this.pdfFile = pdfFile;
+            this.pageIndex = pageIndex;
+            this.pageToContent = new Matrix(pageToContent);
+            this.contentWidth = Math.max(1, contentWidth);
+            this.contentHeight = Math.max(1, contentHeight);
+            this.colorFilter = colorFilter;
+            this.overlayPaths = overlayPaths != null ? new ArrayList<>(overlayPaths) : new ArrayList<>();
+        }
+    }
+
+    private final Paint tilePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint overlayPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Map<String, Future<?>> pending = new HashMap<>();
+    private final RectF tmpRect = new RectF();
+    private final Matrix contentToScreen = new Matrix();
+
+    private Source source;
+    private RectF displayRect;
+    private float level = 0f;
+    private List<Bitmap> overlays;
+    private volatile int generation = 0;
+    private ExecutorService executor;
+    // Touched only from the tile thread
+    private PdfRendererSession workerSession;
+
+    private final Runnable updateRunnable = this::updateTiles;
+
+    public PageTileView(Context context) {
+        super(context);
+        init();
+    }
+
+    public PageTileView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        init();
+    }
+
+    public PageTileView(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        init();
+    }
+
+    private void init() {
+        setWillNotDraw(false);
+        setClickable(false);
+        setFocusable(false);
+        synchronized (PageTileView.class) {
+            if (tileCache == null) {
+                int budget = (int) Math.min(Runtime.getRuntime().maxMemory() / 8, MAX_CACHE_BYTES);
+                tileCache = new LruCache<String, Bitmap>(budget) {
+                    @Override
+                    protected int sizeOf(String key, Bitmap value) {
+                        return value.getAllocationByteCount();
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Largest bitmap dimension the hardware canvas can draw. Known after the first hardware-accelerated
+     * draw of this view; a conservative default is returned before that.
+     */
+    public static int getMaxTextureSize() {
+        int size = maxTextureSize;
+        return size > 0 ? size : DEFAULT_MAX_TEXTURE_SIZE;
+    }
+
+    /** Shows tiles for a new page state. The display rect is the PhotoView's current one. */
+    public void setSource(Source newSource, RectF currentDisplayRect) {
+        if (newSource == null) {
+            clear();
+            return;
+        }
+        boolean samePage = source != null && source.key.equals(newSource.key)
+                && source.contentWidth == newSource.contentWidth && source.contentHeight == newSource.contentHeight;
+        if (!samePage) {
+            cancelPending(null);
+            generation++;
+            source = newSource;
+            setOverlays(null);
+            level = 0f;
+            if (!newSource.overlayPaths.isEmpty()) {
+                loadOverlays(newSource, generation);
+            }
+        }
+        setDisplayRect(currentDisplayRect);
+    }
+
+    /** Removes all tiles, e.g. while a new page is being loaded. */
+    public void clear() {
+        removeCallbacks(updateRunnable);
+        cancelPending(null);
+        generation++;
+        source = null;
+        setOverlays(null);
+        level = 0f;
+        invalidate();
+    }
+
+    /** Called whenever the PhotoView's display matrix changes (zoom, pan, new drawable). */
+    public void setDisplayRect(RectF rect) {
+        displayRect = rect != null ? new RectF(rect) : null;
+        invalidate();
+        removeCallbacks(updateRunnable);
+        postDelayed(updateRunnable, SETTLE_DELAY_MS);
+    }
+
+    private void updateTiles() {
+        Source src = source;
+        RectF rect = displayRect;
+        if (src == null || rect == null || rect.isEmpty() || getWidth() == 0 || getHeight() == 0) {
+            return;
+        }
+        float zoom = rect.width() / src.contentWidth;
+        if (zoom < MIN_TILE_ZOOM) {
+            level = 0f;
+            cancelPending(null);
+            invalidate();
+            return;
+        }
+        // Quantize to half powers of two so small pinch changes reuse the same tiles
+        level = (float) Math.pow(2.0, Math.ceil(Math.log(zoom) / Math.log(2.0) * 2.0) / 2.0);
+
+        Set<String> wanted = new HashSet<>();
+        int[] range = visibleTileRange(src, rect, level);
+        if (range != null) {
+            int count = 0;
+            for (int row = range[1]; row <= range[3] && count < MAX_TILES_PER_PASS; row++) {
+                for (int col = range[0]; col <= range[2] && count < MAX_TILES_PER_PASS; col++, count++) {
+                    String key = tileKey(src, level, col, row);
+                    wanted.add(key);
+                    if (tileCache.get(key) == null && !pending.containsKey(key)) {
+                        submitTile(src, level, col, row, key);
+                    }
+                }
+            }
+        }
+        // Drop requests for tiles that are no longer visible
+        cancelPending(wanted);
+        invalidate();
+    }
+
+    /** Returns {firstCol, firstRow, lastCol, lastRow} of tiles intersecting the view, or null. */
+    private int[] visibleTileRange(Source src, RectF rect, float tileLevel) {
+        float zoom = rect.width() / src.contentWidth;
+        float left = Math.max(0f, -rect.left);
+        float top = Math.max(0f, -rect.top);
+        float right = Math.min(rect.width(), getWidth() - rect.left);
+        float bottom = Math.min(rect.height(), getHeight() - rect.top);
+        if (right <= left || bottom <= top) return null;
+        // Screen offsets inside the page -> tile-level pixels
+        float factor = tileLevel / zoom;
+        int levelWidth = (int) Math.ceil(src.contentWidth * tileLevel);
+        int levelHeight = (int) Math.ceil(src.contentHeight * tileLevel);
+        int maxCol = (levelWidth - 1) / TILE_SIZE;
+        int maxRow = (levelHeight - 1) / TILE_SIZE;
+        return new int[] {
+                Math.max(0, (int) (left * factor) / TILE_SIZE),
+                Math.max(0, (int) (top * factor) / TILE_SIZE),
+                Math.min(maxCol, (int) (right * factor) / TILE_SIZE),
+                Math.min(maxRow, (int) (bottom * factor) / TILE_SIZE)
+        };
+    }
+
+    private void submitTile(Source src, float tileLevel, int col, int row, String key) {
+        final int gen = generation;
+        int levelWidth = (int) Math.ceil(src.contentWidth * tileLevel);
+        int levelHeight = (int) Math.ceil(src.contentHeight * tileLevel);
+        final int x = col * TILE_SIZE;
+        final int y = row * TILE_SIZE;
+        final int w = Math.min(TILE_SIZE, levelWidth - x);
+        final int h = Math.min(TILE_SIZE, levelHeight - y);
+        if (w <= 0 || h <= 0) return;
+        Future<?> f = ensureExecutor().submit(() -> {
+            if (gen != generation) return;
+            try {
+                Matrix transform = new Matrix(src.pageToContent);
+                transform.postScale(tileLevel, tileLevel);
+                transform.postTranslate(-x, -y);
+                Bitmap tile = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+                tile.eraseColor(Color.WHITE);
+                sessionFor(src.pdfFile).withPage(src.pageIndex, page -> {
+                    page.render(tile, null, transform, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                    return null;
+                });
+                post(() -> {
+                    pending.remove(key);
+                    if (gen != generation) return;
+                    tileCache.put(key, tile);
+                    invalidate();
+                });
+            } catch (OutOfMemoryError oom) {
+                Log.w(TAG, "Out of memory while rendering tile " + key);
+                tileCache.evictAll();
+                post(() -> pending.remove(key));
+            } catch (Throwable t) {
+                Log.w(TAG, "Tile render failed: " + key, t);
+                post(() -> pending.remove(key));
+            }
+        });
+        pending.put(key, f);
+    }
+
+    private void loadOverlays(Source src, int gen) {
+        ensureExecutor().submit(() -> {
+            // Same size as in the composite, so these are usually the bitmaps the page was composed with
+            List<Bitmap> decoded = new ArrayList<>();
+            for (String path : src.overlayPaths) {
+                Bitmap bmp = OverlayBitmapCache.getInstance().acquire(path, src.contentWidth, src.contentHeight);
+                if (bmp != null) decoded.add(bmp);
+            }
+            post(() -> {
+                if (gen != generation) {
+                    for (Bitmap bmp : decoded) BitmapPool.getInstance().unpin(bmp);
+                    return;
+                }
+                setOverlays(decoded);
+                invalidate();
+            });
+        });
+    }
+
+    /** Overlay bitmaps come pinned from the {@link OverlayBitmapCache}; unpin the ones being replaced. */
+    private void setOverlays(List<Bitmap> next) {
+        List<Bitmap> previous = overlays;
+        overlays = next;
+        if (previous != null) {
+            for (Bitmap bmp : previous) BitmapPool.getInstance().unpin(bmp);
+        }
+    }
+
+    private PdfRendererSession sessionFor(File file) throws IOException {
+        if (workerSession != null && workerSession.isFor(file)) return workerSession;
+        if (workerSession != null) workerSession.release();
+        workerSession = null;
+        workerSession = PdfRendererSession.acquire(file);
+        return workerSession;
+    }
+
+    private ExecutorService ensureExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }, "page-tiles");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        return executor;
+    }
+
+    /** Cancels pending tile requests, except the ones in {@code keep}. */
+    private void cancelPending(Set<String> keep) {
+        Iterator<Map.Entry<String, Future<?>>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Future<?>> e = it.next();
+            if (keep != null && keep.contains(e.getKey())) continue;
+            e.getValue().cancel(false);
+            it.remove();
+        }
+    }
+
+    private static String tileKey(Source src, float tileLevel, int col, int row) {
+        return src.key + "@" + src.contentWidth + "x" + src.contentHeight + ":"
+                + Math.round(tileLevel * 1000f) + ":" + col + ":" + row;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (maxTextureSize == 0 && canvas.isHardwareAccelerated()) {
+            maxTextureSize = Math.min(canvas.getMaximumBitmapWidth(), canvas.getMaximumBitmapHeight());
+        }
+        Source src = source;
+        RectF rect = displayRect;
+        if (src == null || rect == null || level <= 0f) return;
+        float zoom = rect.width() / src.contentWidth;
+        // Tiles rendered for another zoom are only reused while the gesture settles
+        if (zoom < MIN_TILE_ZOOM) return;
+        int[] range = visibleTileRange(src, rect, level);
+        if (range == null) return;
+
+        float toScreen = zoom / level;
+        tilePaint.setColorFilter(src.colorFilter);
+        contentToScreen.setScale(zoom, zoom);
+        contentToScreen.postTranslate(rect.left, rect.top);
+        for (int row = range[1]; row <= range[3]; row++) {
+            for (int col = range[0]; col <= range[2]; col++) {
+                Bitmap tile = tileCache.get(tileKey(src, level, col, row));
+                if (tile == null || tile.isRecycled()) continue;
+                float left = rect.left + col * TILE_SIZE * toScreen;
+                float top = rect.top + row * TILE_SIZE * toScreen;
+                tmpRect.set(left, top, left + tile.getWidth() * toScreen, top + tile.getHeight() * toScreen);
+                canvas.drawBitmap(tile, null, tmpRect, tilePaint);
+                List<Bitmap> layerBitmaps = overlays;
+                if (layerBitmaps != null && !layerBitmaps.isEmpty()) {
+                    // Layers are already part of the PhotoView bitmap; repeat them only over the sharp tile
+                    canvas.save();
+                    canvas.clipRect(tmpRect);
+                    canvas.concat(contentToScreen);
+                    for (Bitmap overlay : layerBitmaps) {
+                        tmpRect.set(0, 0, src.contentWidth, src.contentHeight);
+                        canvas.drawBitmap(overlay, null, tmpRect, overlayPaint);
+                    }
+                    canvas.restore();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        removeCallbacks(updateRunnable);
+        postDelayed(updateRunnable, SETTLE_DELAY_MS);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(updateRunnable);
+        cancelPending(null);
+        generation++;
+        if (executor != null) {
+            executor.submit(() -> {
+                if (workerSession != null) {
+                    workerSession.release();
+                    workerSession = null;
+                }
+            });
+            executor.shutdown();
+            executor = null;
+        }
+    }
+}
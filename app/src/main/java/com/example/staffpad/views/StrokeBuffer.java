@@ -0,0 +1,57 @@
+package com.example.staffpad.views;
+
+import java.util.Arrays;
+
+/**
+ * Sampled points of one stroke in a single growable float array: x, y, pressure and time (ms since the
+ * first sample) per point. Adding a sample allocates only when the array has to grow, so capturing
+ * stylus input at high rates produces no per-sample garbage. The same buffer is read when the stroke is
+ * saved.
+ */
+public final class StrokeBuffer {
+    private static final int STRIDE = 4;
+    private static final int INITIAL_POINTS = 64;
+
+    private float[] data = new float[INITIAL_POINTS * STRIDE];
+    private int size;
+    private long startTime = -1;
+
+    /** Adds a sample; {@code eventTime} is a MotionEvent time in ms, or 0 if unknown. */
+    public void add(float x, float y, float pressure, long eventTime) {
+        if ((size + 1) * STRIDE > data.length) {
+            data = Arrays.copyOf(data, data.length * 2);
+        }
+        if (startTime < 0) startTime = eventTime;
+        int i = size * STRIDE;
+        data[i] = x;
+        data[i + 1] = y;
+        data[i + 2] = pressure;
+        data[i + 3] = eventTime - startTime;
+        size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public float x(int index) {
+        return data[index * STRIDE];
+    }
+
+    public float y(int index) {
+        return data[index * STRIDE + 1];
+    }
+
+    public float pressure(int index) {
+        return data[index * STRIDE + 2];
+    }
+
+    /** Milliseconds since the first sample. */
+    public float time(int index) {
+        return data[index * STRIDE + 3];
+    }
+}
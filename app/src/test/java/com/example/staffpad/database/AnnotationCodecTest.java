@@ -0,0 +1,151 @@
+package com.example.staffpad.database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class AnnotationCodecTest {
+    private static final int HEADER_SIZE = 3;
+    // Half a quantization step
+    private static final float COORD_EPSILON = 0.5f / 65536f;
+    private static final float PRESSURE_EPSILON = 0.5f / 1024f;
+
+    @Test
+    public void emptyStrokeIsHeaderOnly() {
+        byte[] blob = AnnotationCodec.encode(new float[0], null, 0);
+        assertEquals(HEADER_SIZE, blob.length);
+        AnnotationCodec.PointReader reader = new AnnotationCodec.PointReader(blob);
+        assertFalse(reader.hasPressure());
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void singlePointRoundTrips() {
+        byte[] blob = AnnotationCodec.encode(new float[] { 0.25f, 0.75f }, null, 1);
+        AnnotationCodec.PointReader reader = new AnnotationCodec.PointReader(blob);
+        assertTrue(reader.next());
+        assertEquals(0.25f, reader.x(), COORD_EPSILON);
+        assertEquals(0.75f, reader.y(), COORD_EPSILON);
+        assertEquals(1f, reader.pressure(), 0f);
+        assertFalse(reader.next());
+    }
+
+    @Test
+    public void largeAndNegativeDeltasRoundTrip() {
+        float[] xy = {
+                0f, 0f,
+                1f, 1f,
+                0f, 0f,
+                -0.5f, 2f,
+                0.999f, -0.001f,
+                // Deltas beyond the int range wrap and unwrap again
+                30000f, -30000f,
+                -30000f, 30000f,
+        };
+        assertPoints(xy, null, AnnotationCodec.encode(xy, null, xy.length / 2));
+    }
+
+    @Test
+    public void pressureRoundTrips() {
+        float[] xy = { 0.1f, 0.1f, 0.2f, 0.15f, 0.3f, 0.2f };
+        float[] pressure = { 0f, 0.5f, 1f };
+        byte[] blob = AnnotationCodec.encode(xy, pressure, 3);
+        assertTrue(new AnnotationCodec.PointReader(blob).hasPressure());
+        assertPoints(xy, pressure, blob);
+    }
+
+    @Test
+    public void coordinatesRoundToNearestStep() {
+        float step = 1f / 65536f;
+        float[] xy = { 0.4f * step, 0.6f * step, 2.5f * step, -1.5f * step };
+        AnnotationCodec.PointReader reader = new AnnotationCodec.PointReader(AnnotationCodec.encode(xy, null, 2));
+        assertTrue(reader.next());
+        assertEquals(0f, reader.x(), 0f);
+        assertEquals(step, reader.y(), 0f);
+        assertTrue(reader.next());
+        assertEquals(3f * step, reader.x(), 0f);
+        assertEquals(-step, reader.y(), 0f);
+    }
+
+    @Test
+    public void zigzagVarintBoundaries() {
+        // zigzag(63) = 126 and zigzag(-64) = 127 take one byte; zigzag(64) = 128 and zigzag(-65) = 129 take two
+        assertEquals(HEADER_SIZE + 2, encodedSize(63));
+        assertEquals(HEADER_SIZE + 2, encodedSize(-64));
+        assertEquals(HEADER_SIZE + 3, encodedSize(64));
+        assertEquals(HEADER_SIZE + 3, encodedSize(-65));
+        // zigzag(8191) = 2^14 - 2 is the largest positive two-byte value
+        assertEquals(HEADER_SIZE + 3, encodedSize(8191));
+        assertEquals(HEADER_SIZE + 4, encodedSize(8192));
+        for (int steps : new int[] { 63, 64, -64, -65, 8191, 8192, -8193, 1 << 20, -(1 << 27) }) {
+            float x = steps / 65536f;
+            AnnotationCodec.PointReader reader =
+                    new AnnotationCodec.PointReader(AnnotationCodec.encode(new float[] { x, 0f }, null, 1));
+            assertTrue(reader.next());
+            assertEquals(x, reader.x(), 0f);
+        }
+    }
+
+    @Test
+    public void writerGrowsPastItsEstimate() {
+        AnnotationCodec.PointWriter writer = new AnnotationCodec.PointWriter(true, 0);
+        int count = 5000;
+        float[] xy = new float[count * 2];
+        float[] pressure = new float[count];
+        for (int i = 0; i < count; i++) {
+            xy[2 * i] = (float) Math.sin(i * 0.01) * 0.5f + 0.5f;
+            xy[2 * i + 1] = i / (float) count;
+            pressure[i] = (i % 100) / 100f;
+            writer.add(xy[2 * i], xy[2 * i + 1], pressure[i]);
+        }
+        assertEquals(count, writer.size());
+        assertPoints(xy, pressure, writer.toByteArray());
+    }
+
+    @Test
+    public void truncatedBlobStopsAtLastCompletePoint() {
+        float[] xy = { 0.1f, 0.2f, 0.9f, 0.8f, 0.3f, 0.4f };
+        byte[] blob = AnnotationCodec.encode(xy, null, 3);
+        AnnotationCodec.PointReader reader = new AnnotationCodec.PointReader(Arrays.copyOf(blob, blob.length - 1));
+        int points = 0;
+        while (reader.next()) points++;
+        assertEquals(2, points);
+    }
+
+    @Test
+    public void blobWithoutHeaderHasNoPoints() {
+        assertFalse(new AnnotationCodec.PointReader(null).next());
+        assertFalse(new AnnotationCodec.PointReader(new byte[] { 1, 2 }).next());
+        // Eight bytes, like two packed floats
+        assertFalse(new AnnotationCodec.PointReader(new byte[8]).next());
+        byte[] futureVersion = AnnotationCodec.encode(new float[] { 0.5f, 0.5f }, null, 1);
+        futureVersion[1] = (byte) (AnnotationCodec.VERSION + 1);
+        assertFalse(new AnnotationCodec.PointReader(futureVersion).next());
+    }
+
+    private static int encodedSize(int xSteps) {
+        return AnnotationCodec.encode(new float[] { xSteps / 65536f, 0f }, null, 1).length;
+    }
+
+    private static void assertPoints(float[] xy, float[] pressure, byte[] blob) {
+        AnnotationCodec.PointReader reader = new AnnotationCodec.PointReader(blob);
+        for (int i = 0; i < xy.length / 2; i++) {
+            assertTrue("point " + i, reader.next());
+            assertEquals("x of point " + i, xy[2 * i], reader.x(), tolerance(xy[2 * i]));
+            assertEquals("y of point " + i, xy[2 * i + 1], reader.y(), tolerance(xy[2 * i + 1]));
+            if (pressure != null) {
+                assertEquals("pressure of point " + i, pressure[i], reader.pressure(), PRESSURE_EPSILON);
+            }
+        }
+        assertFalse(reader.next());
+    }
+
+    // Large coordinates lose float precision before they are quantized
+    private static float tolerance(float value) {
+        return Math.max(COORD_EPSILON, Math.ulp(value * 65536f) / 65536f);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.staffpad.rendering;
+
+import static org.junit.Assert.assertEquals;
+
+import com.example.staffpad.database.SheetEntity;
+
+import org.junit.Test;
+
+public class PageMappingTest {
+
+    @Test
+    public void identityWithoutOrderOrDeletions() {
+        PageMapping mapping = PageMapping.forSheet(sheet(null, null), 4);
+        assertEquals(4, mapping.size());
+        for (int i = 0; i < 4; i++) assertEquals(i, mapping.toOriginal(i));
+    }
+
+    @Test
+    public void nullSheetIsIdentity() {
+        PageMapping mapping = PageMapping.forSheet(null, 3);
+        assertEquals(3, mapping.size());
+        assertEquals(2, mapping.toOriginal(2));
+    }
+
+    @Test
+    public void deletedPagesAreSkipped() {
+        PageMapping mapping = PageMapping.forSheet(sheet(null, "[1,3]"), 5);
+        assertEquals(3, mapping.size());
+        assertEquals(0, mapping.toOriginal(0));
+        assertEquals(2, mapping.toOriginal(1));
+        assertEquals(4, mapping.toOriginal(2));
+        assertEquals(5, mapping.getOriginalCount());
+    }
+
+    @Test
+    public void customOrderWithDeletions() {
+        PageMapping mapping = PageMapping.forSheet(sheet("[3,2,1,0]", "[2]"), 4);
+        assertEquals(3, mapping.size());
+        assertEquals(3, mapping.toOriginal(0));
+        assertEquals(1, mapping.toOriginal(1));
+        assertEquals(0, mapping.toOriginal(2));
+    }
+
+    @Test
+    public void outOfRangeOriginalsAreDropped() {
+        PageMapping mapping = PageMapping.forSheet(sheet("[0,7,-1,1]", null), 2);
+        assertEquals(2, mapping.size());
+        assertEquals(0, mapping.toOriginal(0));
+        assertEquals(1, mapping.toOriginal(1));
+    }
+
+    @Test
+    public void outOfRangeLogicalPagesMapToFirstOriginalPage() {
+        PageMapping mapping = PageMapping.forSheet(sheet("[2,1]", null), 3);
+        assertEquals(2, mapping.toOriginal(0));
+        assertEquals(0, mapping.toOriginal(-1));
+        assertEquals(0, mapping.toOriginal(2));
+    }
+
+    @Test
+    public void unusableMappingFallsBackToIdentity() {
+        // Every page deleted
+        assertEquals(3, PageMapping.forSheet(sheet(null, "[0,1,2]"), 3).size());
+        // Malformed JSON
+        PageMapping malformed = PageMapping.forSheet(sheet("[2,", null), 3);
+        assertEquals(3, malformed.size());
+        assertEquals(1, malformed.toOriginal(1));
+    }
+
+    private static SheetEntity sheet(String pageOrderJson, String deletedPagesJson) {
+        SheetEntity sheet = new SheetEntity("Title", "score.pdf", "/tmp/score.pdf", 0L, 0);
+        sheet.setPageOrderJson(pageOrderJson);
+        sheet.setDeletedPagesJson(deletedPagesJson);
+        return sheet;
+    }
+}
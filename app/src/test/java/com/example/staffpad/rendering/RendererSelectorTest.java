@@ -0,0 +1,77 @@
+package com.example.staffpad.rendering;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class RendererSelectorTest {
+    private static final long FREE_HEAP = 100L * 1024 * 1024;
+
+    @Test
+    public void fasterBackendWins() {
+        assertEquals(RendererSelector.Backend.PDFBOX,
+                RendererSelector.choose(trial(100, 0), trial(200, 0), FREE_HEAP));
+        assertEquals(RendererSelector.Backend.ANDROID,
+                RendererSelector.choose(trial(200, 0), trial(100, 0), FREE_HEAP));
+    }
+
+    @Test
+    public void tieGoesToAndroid() {
+        assertEquals(RendererSelector.Backend.ANDROID,
+                RendererSelector.choose(trial(150, 0), trial(150, 0), FREE_HEAP));
+    }
+
+    @Test
+    public void failedTrialLoses() {
+        assertEquals(RendererSelector.Backend.ANDROID,
+                RendererSelector.choose(failed(), trial(500, 0), FREE_HEAP));
+        assertEquals(RendererSelector.Backend.PDFBOX,
+                RendererSelector.choose(trial(500, 0), failed(), FREE_HEAP));
+        // PDFBox is checked first
+        assertEquals(RendererSelector.Backend.ANDROID,
+                RendererSelector.choose(failed(), failed(), FREE_HEAP));
+    }
+
+    @Test
+    public void heapShareThreshold() {
+        long quarter = FREE_HEAP / 4;
+        // At the limit PDFBox may still win on speed
+        assertEquals(RendererSelector.Backend.PDFBOX,
+                RendererSelector.choose(trial(100, quarter), trial(200, 0), FREE_HEAP));
+        // Beyond it PDFBox is ruled out however fast it is
+        assertEquals(RendererSelector.Backend.ANDROID,
+                RendererSelector.choose(trial(100, quarter + 1024), trial(200, 0), FREE_HEAP));
+    }
+
+    @Test
+    public void peakHeapDeltaIsTheLargestPage() {
+        RendererSelector.Trial pdfBox = new RendererSelector.Trial();
+        pdfBox.record(50, FREE_HEAP / 8);
+        pdfBox.record(50, FREE_HEAP / 2);
+        pdfBox.record(50, 0);
+        assertEquals(150, pdfBox.millis);
+        assertEquals(RendererSelector.Backend.ANDROID,
+                RendererSelector.choose(pdfBox, trial(1000, 0), FREE_HEAP));
+    }
+
+    @Test
+    public void parsesStoredNames() {
+        assertEquals(RendererSelector.Backend.PDFBOX, RendererSelector.fromName("PDFBOX"));
+        assertEquals(RendererSelector.Backend.ANDROID, RendererSelector.fromName("ANDROID"));
+        assertNull(RendererSelector.fromName(null));
+        assertNull(RendererSelector.fromName("pdfbox"));
+    }
+
+    private static RendererSelector.Trial trial(long millis, long heapDelta) {
+        RendererSelector.Trial trial = new RendererSelector.Trial();
+        trial.record(millis, heapDelta);
+        return trial;
+    }
+
+    private static RendererSelector.Trial failed() {
+        RendererSelector.Trial trial = new RendererSelector.Trial();
+        trial.failed = true;
+        return trial;
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.staffpad.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class StrokeBufferTest {
+
+    @Test
+    public void startsEmpty() {
+        StrokeBuffer buffer = new StrokeBuffer();
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void keepsSamplesInOrder() {
+        StrokeBuffer buffer = new StrokeBuffer();
+        buffer.add(1f, 2f, 0.5f, 1000L);
+        buffer.add(3f, 4f, 0.75f, 1016L);
+        assertFalse(buffer.isEmpty());
+        assertEquals(2, buffer.size());
+        assertEquals(1f, buffer.x(0), 0f);
+        assertEquals(2f, buffer.y(0), 0f);
+        assertEquals(0.5f, buffer.pressure(0), 0f);
+        assertEquals(3f, buffer.x(1), 0f);
+        assertEquals(4f, buffer.y(1), 0f);
+        assertEquals(0.75f, buffer.pressure(1), 0f);
+    }
+
+    @Test
+    public void timesAreRelativeToFirstSample() {
+        StrokeBuffer buffer = new StrokeBuffer();
+        buffer.add(0f, 0f, 1f, 5_000_000L);
+        buffer.add(0f, 0f, 1f, 5_000_008L);
+        buffer.add(0f, 0f, 1f, 5_000_016L);
+        assertEquals(0f, buffer.time(0), 0f);
+        assertEquals(8f, buffer.time(1), 0f);
+        assertEquals(16f, buffer.time(2), 0f);
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        StrokeBuffer buffer = new StrokeBuffer();
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            buffer.add(i, -i, i / (float) count, i);
+        }
+        assertEquals(count, buffer.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, buffer.x(i), 0f);
+            assertEquals(-i, buffer.y(i), 0f);
+            assertEquals(i / (float) count, buffer.pressure(i), 0f);
+            assertEquals(i, buffer.time(i), 0f);
+        }
+    }
+}